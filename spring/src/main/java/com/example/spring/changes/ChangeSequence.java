@@ -0,0 +1,108 @@
+package com.example.spring.changes;
+
+import com.example.spring.service.UserChangedEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tracks the last outbox sequence number handed to subscribers and detects holes in the sequence.
+ * A hole is either a transaction that took its number but has not committed yet, or one that rolled
+ * back. Entries after a hole are held back for up to {@code gapTimeoutNanos}; if the hole is still
+ * open by then it is skipped and the caller is told to resync. A slow transaction may still commit
+ * after that resync has read the table, so the skipped numbers are kept for {@code lateTimeoutNanos}
+ * and an entry that turns up for one of them is delivered late.
+ */
+class ChangeSequence {
+    record Entry(long seq, String origin, UserChangedEvent event) {
+    }
+
+    record Result(List<UserChangedEvent> events, boolean resyncNeeded) {
+    }
+
+    private final String localOrigin;
+    private final long gapTimeoutNanos;
+    private final long lateTimeoutNanos;
+    // skipped sequence number -> when it was skipped
+    private final Map<Long, Long> skipped = new TreeMap<>();
+    private long lastSeq;
+    private long gapSince = -1;
+
+    ChangeSequence(long lastSeq, String localOrigin, long gapTimeoutNanos, long lateTimeoutNanos) {
+        this.lastSeq = lastSeq;
+        this.localOrigin = localOrigin;
+        this.gapTimeoutNanos = gapTimeoutNanos;
+        this.lateTimeoutNanos = lateTimeoutNanos;
+    }
+
+    long lastSeq() {
+        return lastSeq;
+    }
+
+    boolean hasPendingGap() {
+        return gapSince >= 0;
+    }
+
+    /**
+     * Sequence numbers skipped less than {@code lateTimeoutNanos} ago, whose entries may still turn up.
+     * Older ones are forgotten: by then their transaction has rolled back.
+     */
+    List<Long> skipped(long nowNanos) {
+        skipped.values().removeIf(skippedAt -> nowNanos - skippedAt >= lateTimeoutNanos);
+        return List.copyOf(skipped.keySet());
+    }
+
+    /**
+     * Jumps past entries that can no longer be read, e.g. after they were pruned from the outbox.
+     */
+    void skipTo(long seq) {
+        lastSeq = Math.max(lastSeq, seq);
+        gapSince = -1;
+    }
+
+    /**
+     * Consumes entries ordered by sequence number and returns the events from other instances that are now due.
+     */
+    Result accept(List<Entry> entries, long nowNanos) {
+        List<UserChangedEvent> events = new ArrayList<>(entries.size());
+        boolean resyncNeeded = false;
+        for (Entry entry : entries) {
+            if (entry.seq() <= lastSeq) {
+                continue;
+            }
+            if (entry.seq() != lastSeq + 1) {
+                if (gapSince < 0) {
+                    gapSince = nowNanos;
+                }
+                if (nowNanos - gapSince < gapTimeoutNanos) {
+                    break;
+                }
+                resyncNeeded = true;
+                for (long seq = lastSeq + 1; seq < entry.seq(); seq++) {
+                    skipped.put(seq, nowNanos);
+                }
+            }
+            gapSince = -1;
+            lastSeq = entry.seq();
+            if (!localOrigin.equals(entry.origin())) {
+                events.add(entry.event());
+            }
+        }
+        return new Result(events, resyncNeeded);
+    }
+
+    /**
+     * Consumes entries read for {@link #skipped} sequence numbers and returns the events from other instances among them.
+     */
+    List<UserChangedEvent> acceptLate(List<Entry> entries) {
+        List<UserChangedEvent> events = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (skipped.remove(entry.seq()) != null && !localOrigin.equals(entry.origin())) {
+                events.add(entry.event());
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.spring.changes;
+
+import com.example.spring.service.UserChangedEvent;
+import com.example.spring.sharding.ShardRouter;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows {@code user_changes} written by every instance and fans new entries out to the local
+ * {@link UserChangeSubscriber}s. A dedicated connection LISTENs for notifications; each wake-up reads
+ * all rows past the last delivered sequence number in batches, so many notifications cost one query.
+ * Rows are also read every {@code poll-interval-ms} without a notification, and after a reconnect,
+ * so a lost notification only delays delivery. Subscribers are told to resync when a hole in the
+ * sequence does not close in time or when unread rows were already pruned. Rows that show up for a
+ * skipped hole within {@code late-timeout-ms} are still delivered, as the resync could not see them.
+ * Every shard has its own outbox and sequence, followed by its own thread.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "app.changes.enabled", havingValue = "true")
+public class UserChangeListener {
+    private static final String SELECT_AFTER = "select seq, origin, type, user_id, email, old_user_name, user_name "
+            + "from user_changes where seq > ? order by seq limit ?";
+    private static final String SELECT_SKIPPED = "select seq, origin, type, user_id, email, old_user_name, user_name "
+            + "from user_changes where seq = any(?) order by seq";
+    private static final long RECONNECT_DELAY_MS = 1_000;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final List<UserChangeSubscriber> subscribers;
+    private final List<ShardFollower> followers = new ArrayList<>();
+    private final int batchSize;
+    private final int pollIntervalMs;
+    private final Duration retention;
+    private volatile boolean running = true;
+    private final List<Thread> threads = new ArrayList<>();
+
+    public UserChangeListener(DataSource dataSource, JdbcTemplate jdbcTemplate, ShardRouter shardRouter,
+                              UserChangeOutbox outbox, List<UserChangeSubscriber> subscribers,
+                              @Value("${app.changes.batch-size:500}") int batchSize,
+                              @Value("${app.changes.poll-interval-ms:5000}") int pollIntervalMs,
+                              @Value("${app.changes.gap-timeout-ms:10000}") long gapTimeoutMs,
+                              @Value("${app.changes.late-timeout-ms:300000}") long lateTimeoutMs,
+                              @Value("${app.changes.retention-hours:24}") long retentionHours) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.subscribers = subscribers;
+        this.batchSize = batchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.retention = Duration.ofHours(retentionHours);
+        // read before the subscribers load their state at startup, so nothing committed in between is lost
+        shardRouter.forEachShard(shard -> {
+            Long lastSeq = jdbcTemplate.queryForObject("select coalesce(max(seq), 0) from user_changes", Long.class);
+            followers.add(new ShardFollower(shard,
+                    new ChangeSequence(lastSeq, outbox.origin(), TimeUnit.MILLISECONDS.toNanos(gapTimeoutMs),
+                            TimeUnit.MILLISECONDS.toNanos(lateTimeoutMs))));
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        for (ShardFollower follower : followers) {
+            threads.add(Thread.ofPlatform().name("user-change-listener-" + follower.shard).daemon()
+                    .start(() -> shardRouter.onShard(follower.shard, () -> {
+                        follower.run();
+                        return null;
+                    })));
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread thread : threads) {
+            thread.join(pollIntervalMs + RECONNECT_DELAY_MS);
+        }
+    }
+
+    private void deliver(List<UserChangedEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        for (UserChangeSubscriber subscriber : subscribers) {
+            try {
+                subscriber.onRemoteChanges(events);
+            } catch (RuntimeException e) {
+                log.error("{} failed to apply {} user changes, resyncing it", subscriber, events.size(), e);
+                subscriber.resync();
+            }
+        }
+    }
+
+    private void resync() {
+        for (UserChangeSubscriber subscriber : subscribers) {
+            try {
+                subscriber.resync();
+            } catch (RuntimeException e) {
+                log.error("{} failed to resync", subscriber, e);
+            }
+        }
+    }
+
+    /**
+     * Follows the outbox of one shard; runs on its own thread with that shard selected.
+     */
+    private class ShardFollower {
+        private final int shard;
+        private final ChangeSequence sequence;
+        private long lastPrune;
+
+        ShardFollower(int shard, ChangeSequence sequence) {
+            this.shard = shard;
+            this.sequence = sequence;
+        }
+
+        void run() {
+            while (running) {
+                try (Connection connection = dataSource.getConnection()) {
+                    PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("LISTEN " + UserChangeOutbox.CHANNEL);
+                    }
+                    skipPruned();
+                    drain();
+                    while (running) {
+                        // returns on a notification or after the timeout; either way read whatever is new
+                        pgConnection.getNotifications(sequence.hasPendingGap() ? 100 : pollIntervalMs);
+                        drain();
+                        prune();
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    log.warn("User change listener for shard {} failed, reconnecting", shard, e);
+                    sleep(RECONNECT_DELAY_MS);
+                }
+            }
+        }
+
+        private void drain() {
+            drainSkipped();
+            List<ChangeSequence.Entry> entries;
+            do {
+                entries = jdbcTemplate.query(SELECT_AFTER, UserChangeListener::entry, sequence.lastSeq(), batchSize);
+                ChangeSequence.Result result = sequence.accept(entries, System.nanoTime());
+                deliver(result.events());
+                if (result.resyncNeeded()) {
+                    log.warn("Gap in user change sequence before {}, resyncing", sequence.lastSeq());
+                    resync();
+                }
+            } while (entries.size() == batchSize && !sequence.hasPendingGap());
+        }
+
+        /**
+         * Delivers the rows of slow transactions that committed after their hole was skipped.
+         */
+        private void drainSkipped() {
+            List<Long> skipped = sequence.skipped(System.nanoTime());
+            if (skipped.isEmpty()) {
+                return;
+            }
+            List<ChangeSequence.Entry> entries = jdbcTemplate.query(SELECT_SKIPPED,
+                    statement -> statement.setArray(1, statement.getConnection().createArrayOf("bigint", skipped.toArray())),
+                    UserChangeListener::entry);
+            if (!entries.isEmpty()) {
+                log.info("{} user changes committed after their gap was skipped, delivering them late", entries.size());
+            }
+            deliver(sequence.acceptLate(entries));
+        }
+
+        private void skipPruned() {
+            Long oldest = jdbcTemplate.queryForObject("select min(seq) from user_changes", Long.class);
+            if (oldest != null && oldest > sequence.lastSeq() + 1) {
+                log.warn("User changes up to {} were pruned before being read, resyncing", oldest - 1);
+                sequence.skipTo(oldest - 1);
+                resync();
+            }
+        }
+
+        private void prune() {
+            long now = System.currentTimeMillis();
+            if (now - lastPrune < TimeUnit.HOURS.toMillis(1)) {
+                return;
+            }
+            lastPrune = now;
+            int pruned = jdbcTemplate.update("delete from user_changes where created_at < ?",
+                    Timestamp.from(Instant.now().minus(retention)));
+            log.info("Pruned {} user changes older than {}", pruned, retention);
+        }
+    }
+
+    private static ChangeSequence.Entry entry(ResultSet rs, int rowNum) throws SQLException {
+        return new ChangeSequence.Entry(
+                rs.getLong("seq"),
+                rs.getString("origin"),
+                new UserChangedEvent(UserChangedEvent.Type.valueOf(rs.getString("type")),
+                        rs.getObject("user_id", Long.class), rs.getString("email"),
+                        rs.getString("old_user_name"), rs.getString("user_name")));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
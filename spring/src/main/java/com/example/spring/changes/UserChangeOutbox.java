@@ -0,0 +1,59 @@
+package com.example.spring.changes;
+
+import com.example.spring.service.UserChangedEvent;
+import com.example.spring.sharding.ShardRouter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.UUID;
+
+/**
+ * Transactional outbox for {@link UserChangedEvent}s. Each event is written to {@code user_changes}
+ * inside the transaction that made the change, followed by a {@code NOTIFY} carrying its sequence
+ * number, which Postgres only delivers once that transaction commits. With several shards every
+ * shard has its own outbox, written in the transaction of the shard that holds the user.
+ */
+@Component
+@ConditionalOnProperty(name = "app.changes.enabled", havingValue = "true")
+public class UserChangeOutbox {
+    static final String CHANNEL = "user_changes";
+
+    private static final String CREATE_TABLE = """
+            create table if not exists user_changes (
+                seq bigserial primary key,
+                origin varchar(36) not null,
+                type varchar(16) not null,
+                user_id bigint,
+                email varchar(255),
+                old_user_name varchar(255),
+                user_name varchar(255),
+                created_at timestamp not null default now()
+            )""";
+    private static final String INSERT = "insert into user_changes (origin, type, user_id, email, old_user_name, user_name) "
+            + "values (?, ?, ?, ?, ?, ?) returning seq";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String origin = UUID.randomUUID().toString();
+
+    public UserChangeOutbox(JdbcTemplate jdbcTemplate, ShardRouter shardRouter) {
+        this.jdbcTemplate = jdbcTemplate;
+        shardRouter.forEachShard(shard -> jdbcTemplate.execute(CREATE_TABLE));
+    }
+
+    /**
+     * Identifies this instance in the outbox so its listener can skip changes it already applied locally.
+     */
+    public String origin() {
+        return origin;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        Long seq = jdbcTemplate.queryForObject(INSERT, Long.class, origin, event.type().name(), event.id(),
+                event.email(), event.oldUserName(), event.userName());
+        jdbcTemplate.queryForList("select pg_notify(?, ?)", CHANNEL, Long.toString(seq));
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.spring.changes;
+
+import com.example.spring.service.UserChangedEvent;
+
+import java.util.List;
+
+/**
+ * In-process state derived from {@code Users2} that has to follow changes made by other instances.
+ * Changes made by this instance still arrive as local {@link UserChangedEvent}s and are not repeated here.
+ */
+public interface UserChangeSubscriber {
+
+    /**
+     * Applies a batch of committed changes from other instances, in commit-sequence order.
+     */
+    void onRemoteChanges(List<UserChangedEvent> events);
+
+    /**
+     * Called when changes may have been missed; the subscriber must rebuild its state from the table.
+     */
+    void resync();
+}
@@ -3,7 +3,6 @@ package com.example.spring.controller;
 import com.example.spring.model.User;
 import com.example.spring.service.UserService;
 import jakarta.servlet.http.HttpSession;
-import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -129,7 +128,6 @@ public class CustomController {
         return "password_change";
     }
 
-    @Transactional
     @PostMapping("/delete")
     public String deleteUser(@RequestParam String email,
                              @RequestParam String password, Model model, HttpSession session) {
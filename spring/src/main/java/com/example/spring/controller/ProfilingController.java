@@ -0,0 +1,101 @@
+package com.example.spring.controller;
+
+import com.example.spring.profiling.RecordingManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Starts, stops and downloads Flight Recorder recordings of a live instance. Only callers that
+ * send {@code app.admin.token} in the {@code X-Admin-Token} header are let in; without a configured
+ * token the endpoints do not exist.
+ */
+@RestController
+@RequestMapping("/admin/profiling")
+public class ProfilingController {
+    static final String ADMIN_TOKEN_HEADER = "X-Admin-Token";
+
+    private final RecordingManager recordingManager;
+    private final byte[] adminToken;
+
+    public ProfilingController(RecordingManager recordingManager, @Value("${app.admin.token:}") String adminToken) {
+        this.recordingManager = recordingManager;
+        this.adminToken = adminToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @GetMapping
+    public RecordingManager.Status status(@RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token) {
+        checkAdmin(token);
+        return recordingManager.status();
+    }
+
+    @PostMapping("/start")
+    public RecordingManager.Status start(@RequestParam(value = "seconds", defaultValue = "60") long seconds,
+                                         @RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token) {
+        checkAdmin(token);
+        return call(() -> recordingManager.start(Duration.ofSeconds(seconds)));
+    }
+
+    @PostMapping("/stop")
+    public RecordingManager.Status stop(@RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token) {
+        checkAdmin(token);
+        return call(recordingManager::stop);
+    }
+
+    @GetMapping("/recording")
+    public ResponseEntity<StreamingResponseBody> download(
+            @RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token) {
+        checkAdmin(token);
+        RecordingManager.Download download = call(recordingManager::download);
+        StreamingResponseBody body = out -> {
+            try {
+                Files.copy(download.file(), out);
+            } finally {
+                if (download.temporary()) {
+                    Files.deleteIfExists(download.file());
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename("recording.jfr").build().toString())
+                .body(body);
+    }
+
+    private void checkAdmin(String token) {
+        if (adminToken.length == 0) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        if (token == null || !MessageDigest.isEqual(adminToken, token.getBytes(StandardCharsets.UTF_8))) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "admin token required");
+        }
+    }
+
+    private static <T> T call(Supplier<T> action) {
+        try {
+            return action.get();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+}
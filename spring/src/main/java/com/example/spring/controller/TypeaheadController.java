@@ -0,0 +1,36 @@
+package com.example.spring.controller;
+
+import com.example.spring.search.UserPrefixIndex;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+public class TypeaheadController {
+    private static final int MAX_LIMIT = 50;
+
+    private final UserPrefixIndex userPrefixIndex;
+
+    public TypeaheadController(UserPrefixIndex userPrefixIndex) {
+        this.userPrefixIndex = userPrefixIndex;
+    }
+
+    @GetMapping("/typeahead")
+    public ResponseEntity<List<String>> typeahead(@RequestParam("prefix") String prefix,
+                                                  @RequestParam(value = "limit", defaultValue = "10") int limit,
+                                                  HttpSession session) {
+        if (session.getAttribute("user") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (prefix.isEmpty()) {
+            return ResponseEntity.ok(List.of());
+        }
+        int boundedLimit = Math.max(1, Math.min(limit, MAX_LIMIT));
+        return ResponseEntity.ok(userPrefixIndex.findByPrefix(prefix, boundedLimit));
+    }
+}
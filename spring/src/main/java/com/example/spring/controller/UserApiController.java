@@ -0,0 +1,132 @@
+package com.example.spring.controller;
+
+import com.example.spring.model.User;
+import com.example.spring.model.UserView;
+import com.example.spring.service.UserDirectoryVersion;
+import com.example.spring.service.UserService;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * JSON counterpart of the user views. Every response carries an ETag taken from
+ * {@link UserDirectoryVersion}, and a matching {@code If-None-Match} is answered with 304
+ * after one lookup of the version counter per shard, before any user is read. The ETag is weak
+ * because Tomcat never compresses a response with a strong one, whose bytes would then change
+ * with the encoding; a weak tag still validates the same content in any encoding.
+ */
+@RestController
+@RequestMapping("/api/users")
+public class UserApiController {
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final UserService userService;
+    private final UserDirectoryVersion directoryVersion;
+
+    public UserApiController(UserService userService, UserDirectoryVersion directoryVersion) {
+        this.userService = userService;
+        this.directoryVersion = directoryVersion;
+    }
+
+    public record UserPage(List<Map<String, Object>> content, int page, int size, boolean hasNext) {
+    }
+
+    @GetMapping
+    public ResponseEntity<?> list(@RequestParam(value = "page", defaultValue = "0") int page,
+                                  @RequestParam(value = "size", defaultValue = "50") int size,
+                                  @RequestParam(value = "fields", required = false) String fields,
+                                  WebRequest request, HttpSession session) {
+        Pageable pageable = pageable(page, size);
+        Set<String> selected = parseFields(fields);
+        return respond(request, session, () -> Optional.of(toPage(userService.findAll(pageable), selected)));
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<?> search(@RequestParam("pattern") String pattern,
+                                    @RequestParam(value = "page", defaultValue = "0") int page,
+                                    @RequestParam(value = "size", defaultValue = "50") int size,
+                                    @RequestParam(value = "fields", required = false) String fields,
+                                    WebRequest request, HttpSession session) {
+        Pageable pageable = pageable(page, size);
+        Set<String> selected = parseFields(fields);
+        return respond(request, session, () -> Optional.of(
+                toPage(userService.findByPartOfUsernameOrEmail(pattern, pageable), selected)));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> findById(@PathVariable("id") Long id,
+                                      @RequestParam(value = "fields", required = false) String fields,
+                                      WebRequest request, HttpSession session) {
+        Set<String> selected = parseFields(fields);
+        return respond(request, session, () -> userService.findById(id).map(user -> UserView.of(user, selected)));
+    }
+
+    @GetMapping("/by-email")
+    public ResponseEntity<?> findByEmail(@RequestParam("email") String email,
+                                         @RequestParam(value = "fields", required = false) String fields,
+                                         WebRequest request, HttpSession session) {
+        Set<String> selected = parseFields(fields);
+        return respond(request, session, () -> userService.findByEmail(email).map(user -> UserView.of(user, selected)));
+    }
+
+    private ResponseEntity<?> respond(WebRequest request, HttpSession session, Supplier<Optional<?>> body) {
+        if (session.getAttribute("user") == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        String etag = "W/\"" + directoryVersion.current() + "\"";
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return body.get()
+                .<ResponseEntity<?>>map(value -> ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(value))
+                .orElseGet(() -> ResponseEntity.notFound().cacheControl(CacheControl.noCache()).build());
+    }
+
+    private static Pageable pageable(int page, int size) {
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "page must be >= 0 and size between 1 and " + MAX_PAGE_SIZE);
+        }
+        return PageRequest.of(page, size, Sort.by("id"));
+    }
+
+    private static Set<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return UserView.FIELDS;
+        }
+        Set<String> selected = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .collect(Collectors.toSet());
+        if (!UserView.FIELDS.containsAll(selected)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "fields must be a subset of " + UserView.FIELDS);
+        }
+        return selected;
+    }
+
+    private static UserPage toPage(Slice<User> slice, Set<String> fields) {
+        List<Map<String, Object>> content = slice.getContent().stream()
+                .map(user -> UserView.of(user, fields))
+                .toList();
+        return new UserPage(content, slice.getNumber(), slice.getSize(), slice.hasNext());
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.spring.filter;
 
+import com.example.spring.profiling.FilterEvent;
 import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.stereotype.Component;
 
@@ -15,13 +17,24 @@ public class BackButtonProtectionFilter implements Filter {
 
     @Override
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) servletRequest;
         HttpServletResponse httpResponse = (HttpServletResponse) servletResponse;
+        FilterEvent event = new FilterEvent("BackButtonProtectionFilter");
+        event.begin();
+
+        // the JSON API sets its own Cache-Control so clients can keep responses and revalidate them by ETag
+        if (httpRequest.getRequestURI().startsWith("/api/")) {
+            event.commit();
+            filterChain.doFilter(servletRequest, servletResponse);
+            return;
+        }
 
         httpResponse.setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
         httpResponse.addHeader("Cache-Control", "post-check=0, pre-check=0");
         httpResponse.setHeader("Pragma", "no-cache");
         httpResponse.setDateHeader("Expires", 0);
 
+        event.commit();
         filterChain.doFilter(servletRequest, servletResponse);
     }
 
@@ -1,5 +1,6 @@
 package com.example.spring.filter;
 
+import com.example.spring.profiling.FilterEvent;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -13,13 +14,18 @@ import java.util.Collections;
 @Component
 @Slf4j
 public class HeadersLoggingFilter extends OncePerRequestFilter {
+    private static final String ADMIN_TOKEN_HEADER = "x-admin-token";
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        FilterEvent event = new FilterEvent("HeadersLoggingFilter");
+        event.begin();
         Collections.list(request.getHeaderNames())
                 .forEach(header -> {
-                    log.info("Header: {}={}", header, request.getHeader(header));
+                    String value = ADMIN_TOKEN_HEADER.equalsIgnoreCase(header) ? "***" : request.getHeader(header);
+                    log.info("Header: {}={}", header, value);
                 });
+        event.commit();
         filterChain.doFilter(request, response);
     }
 }
@@ -0,0 +1,48 @@
+package com.example.spring.filter;
+
+import com.example.spring.profiling.RequestCorrelation;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Gives every request a correlation id, taken from a well-formed {@code X-Request-Id} header or
+ * generated, and exposes it to profiling events, the log MDC and the response. Runs first so the
+ * other filters already see it.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestCorrelationFilter extends OncePerRequestFilter {
+    static final String HEADER = "X-Request-Id";
+    private static final String MDC_KEY = "requestId";
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        String correlationId = request.getHeader(HEADER);
+        if (correlationId == null || !VALID_ID.matcher(correlationId).matches()) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            correlationId = new UUID(random.nextLong(), random.nextLong()).toString();
+        }
+        response.setHeader(HEADER, correlationId);
+        RequestCorrelation.set(correlationId);
+        MDC.put(MDC_KEY, correlationId);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            MDC.remove(MDC_KEY);
+            RequestCorrelation.set(null);
+        }
+    }
+}
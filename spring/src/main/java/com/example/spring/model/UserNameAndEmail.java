@@ -0,0 +1,9 @@
+package com.example.spring.model;
+
+public interface UserNameAndEmail {
+    Long getId();
+
+    String getUserName();
+
+    String getEmail();
+}
@@ -0,0 +1,29 @@
+package com.example.spring.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JSON representation of a {@link User} without the password hash, optionally limited to a set of fields.
+ */
+public final class UserView {
+    public static final Set<String> FIELDS = Set.of("id", "userName", "email");
+
+    private UserView() {
+    }
+
+    public static Map<String, Object> of(User user, Set<String> fields) {
+        Map<String, Object> view = new LinkedHashMap<>();
+        if (fields.contains("id")) {
+            view.put("id", user.getId());
+        }
+        if (fields.contains("userName")) {
+            view.put("userName", user.getUserName());
+        }
+        if (fields.contains("email")) {
+            view.put("email", user.getEmail());
+        }
+        return view;
+    }
+}
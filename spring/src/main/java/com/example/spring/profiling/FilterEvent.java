@@ -0,0 +1,17 @@
+package com.example.spring.profiling;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.example.spring.Filter")
+@Label("Filter")
+@Description("Time a servlet filter spends before calling the rest of the chain")
+public class FilterEvent extends RequestEvent {
+    @Label("Filter")
+    String filter;
+
+    public FilterEvent(String filter) {
+        this.filter = filter;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.spring.profiling;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.spring6.view.ThymeleafViewResolver;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Hooks the repository and view events into beans created by auto-configuration: every Spring Data
+ * repository gets an interceptor recording a {@link RepositoryCallEvent} per call, and Thymeleaf
+ * renders through {@link ProfiledThymeleafView}.
+ */
+@Component
+public class JfrEventsPostProcessor implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> repositoryFactoryBean) {
+            repositoryFactoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                    (proxyFactory, metadata) -> proxyFactory.addAdvice(
+                            repositoryCallInterceptor(metadata.getRepositoryInterface().getSimpleName()))));
+        } else if (bean instanceof ThymeleafViewResolver viewResolver) {
+            viewResolver.setViewClass(ProfiledThymeleafView.class);
+        }
+        return bean;
+    }
+
+    static MethodInterceptor repositoryCallInterceptor(String repository) {
+        return invocation -> {
+            RepositoryCallEvent event = new RepositoryCallEvent();
+            if (!event.isEnabled()) {
+                return invocation.proceed();
+            }
+            event.begin();
+            Object result = null;
+            try {
+                result = invocation.proceed();
+                return result;
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.repository = repository;
+                    event.query = invocation.getMethod().getName();
+                    event.rows = rows(result);
+                    event.commit();
+                }
+            }
+        };
+    }
+
+    private static long rows(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        if (result instanceof Slice<?> slice) {
+            return slice.getNumberOfElements();
+        }
+        if (result instanceof Stream<?>) {
+            return -1;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.spring.profiling;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.example.spring.Password")
+@Label("Password Hash or Match")
+@Description("BCrypt work done for one encode or matches call")
+class PasswordEvent extends RequestEvent {
+    @Label("Operation")
+    String operation;
+
+    @Label("Matched")
+    boolean matched;
+}
@@ -0,0 +1,46 @@
+package com.example.spring.profiling;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Records a {@link PasswordEvent} around every hash and match of the wrapped encoder.
+ */
+public class ProfiledPasswordEncoder implements PasswordEncoder {
+    private final PasswordEncoder delegate;
+
+    public ProfiledPasswordEncoder(PasswordEncoder delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        PasswordEvent event = new PasswordEvent();
+        event.begin();
+        String encoded = delegate.encode(rawPassword);
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "hash";
+            event.commit();
+        }
+        return encoded;
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        PasswordEvent event = new PasswordEvent();
+        event.begin();
+        boolean matched = delegate.matches(rawPassword, encodedPassword);
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "match";
+            event.matched = matched;
+            event.commit();
+        }
+        return matched;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+}
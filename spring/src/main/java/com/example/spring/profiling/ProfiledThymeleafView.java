@@ -0,0 +1,135 @@
+package com.example.spring.profiling;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.thymeleaf.spring6.view.ThymeleafView;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Records a {@link TemplateRenderEvent} per rendered view. The response is only wrapped to count
+ * bytes while a recording has the event enabled, so rendering is unchanged the rest of the time.
+ */
+public class ProfiledThymeleafView extends ThymeleafView {
+
+    @Override
+    public void render(Map<String, ?> model, HttpServletRequest request, HttpServletResponse response) throws Exception {
+        TemplateRenderEvent event = new TemplateRenderEvent();
+        if (!event.isEnabled()) {
+            super.render(model, request, response);
+            return;
+        }
+        ByteCountingResponse counting = new ByteCountingResponse(response);
+        event.begin();
+        try {
+            super.render(model, request, counting);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.template = getTemplateName();
+                event.bytes = counting.bytes;
+                event.commit();
+            }
+        }
+    }
+
+    private static class ByteCountingResponse extends HttpServletResponseWrapper {
+        private long bytes;
+        private PrintWriter writer;
+        private ServletOutputStream outputStream;
+
+        ByteCountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new CountingWriter(super.getWriter()));
+            }
+            return writer;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new CountingOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        private class CountingWriter extends Writer {
+            private final Writer delegate;
+
+            CountingWriter(Writer delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void write(char[] chars, int offset, int length) throws IOException {
+                for (int i = offset; i < offset + length; i++) {
+                    char c = chars[i];
+                    // a surrogate pair is 4 bytes in UTF-8, counted as 2 per half
+                    bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+                }
+                delegate.write(chars, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                delegate.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                delegate.close();
+            }
+        }
+
+        private class CountingOutputStream extends ServletOutputStream {
+            private final ServletOutputStream delegate;
+
+            CountingOutputStream(ServletOutputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                bytes++;
+                delegate.write(b);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                bytes += length;
+                delegate.write(buffer, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                delegate.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                delegate.close();
+            }
+
+            @Override
+            public boolean isReady() {
+                return delegate.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+                delegate.setWriteListener(listener);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.spring.profiling;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Runs at most one on-demand Flight Recorder recording at a time. Recordings use the JDK
+ * {@code default} settings, meant for continuous use in production, plus the custom request
+ * events, stop by themselves after the requested duration and are capped in size. The last
+ * recording is kept on disk until the next one starts.
+ */
+@Component
+@Slf4j
+public class RecordingManager {
+    private final Duration maxDuration;
+    private final long maxSizeBytes;
+    private Recording recording;
+    private Path file;
+
+    public record Status(String state, Instant startTime, Duration duration, long size) {
+    }
+
+    /**
+     * A recording file to send; {@code temporary} files are snapshots of a running recording.
+     */
+    public record Download(Path file, boolean temporary) {
+    }
+
+    public RecordingManager(@Value("${app.profiling.max-duration-seconds:600}") long maxDurationSeconds,
+                            @Value("${app.profiling.max-size-mb:100}") long maxSizeMb) {
+        this.maxDuration = Duration.ofSeconds(maxDurationSeconds);
+        this.maxSizeBytes = maxSizeMb * 1024 * 1024;
+    }
+
+    public synchronized Status start(Duration duration) {
+        if (duration.isNegative() || duration.isZero() || duration.compareTo(maxDuration) > 0) {
+            throw new IllegalArgumentException("duration must be between 1 and " + maxDuration.toSeconds() + " seconds");
+        }
+        if (isRunning()) {
+            throw new IllegalStateException("a recording is already running");
+        }
+        discard();
+        try {
+            Recording started = new Recording(Configuration.getConfiguration("default"));
+            started.setName("on-demand");
+            started.enable(PasswordEvent.class);
+            started.enable(RepositoryCallEvent.class);
+            started.enable(TemplateRenderEvent.class);
+            started.enable(FilterEvent.class);
+            started.setToDisk(true);
+            started.setMaxSize(maxSizeBytes);
+            started.setDuration(duration);
+            file = Files.createTempFile("recording-", ".jfr");
+            started.setDestination(file);
+            started.start();
+            recording = started;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ParseException e) {
+            throw new IllegalStateException("JDK default recording settings are unreadable", e);
+        }
+        log.info("Started a {} s recording into {}", duration.toSeconds(), file);
+        return status();
+    }
+
+    public synchronized Status stop() {
+        if (!isRunning()) {
+            throw new IllegalStateException("no recording is running");
+        }
+        recording.stop();
+        log.info("Stopped recording into {}", file);
+        return status();
+    }
+
+    public synchronized Status status() {
+        if (recording == null) {
+            return new Status("NONE", null, null, 0);
+        }
+        return new Status(recording.getState().name(), recording.getStartTime(), recording.getDuration(),
+                recording.getSize());
+    }
+
+    /**
+     * The finished recording, or a snapshot of everything recorded so far while it is still running.
+     */
+    public synchronized Download download() {
+        if (recording == null) {
+            throw new IllegalStateException("nothing has been recorded yet");
+        }
+        try {
+            if (isRunning()) {
+                Path snapshot = Files.createTempFile("recording-snapshot-", ".jfr");
+                recording.dump(snapshot);
+                return new Download(snapshot, true);
+            }
+            return new Download(file, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void discard() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete recording {}", file, e);
+            }
+            file = null;
+        }
+    }
+
+    private boolean isRunning() {
+        return recording != null && recording.getState() == RecordingState.RUNNING;
+    }
+}
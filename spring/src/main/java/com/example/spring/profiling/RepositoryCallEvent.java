@@ -0,0 +1,20 @@
+package com.example.spring.profiling;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.example.spring.RepositoryCall")
+@Label("Repository Call")
+@Description("One Spring Data repository method call, including the queries it ran")
+class RepositoryCallEvent extends RequestEvent {
+    @Label("Repository")
+    String repository;
+
+    @Label("Query")
+    String query;
+
+    @Label("Rows")
+    @Description("Rows returned, -1 for streams whose rows are read after the call")
+    long rows;
+}
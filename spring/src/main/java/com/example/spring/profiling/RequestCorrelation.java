@@ -0,0 +1,37 @@
+package com.example.spring.profiling;
+
+import java.util.function.Supplier;
+
+/**
+ * Correlation id of the request handled by the current thread, set by
+ * {@link com.example.spring.filter.RequestCorrelationFilter} and stamped on every profiling event.
+ * Work handed to other threads carries it over with {@link #with}.
+ */
+public final class RequestCorrelation {
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private RequestCorrelation() {
+    }
+
+    public static String currentId() {
+        return CURRENT.get();
+    }
+
+    public static void set(String correlationId) {
+        if (correlationId == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(correlationId);
+        }
+    }
+
+    public static <T> T with(String correlationId, Supplier<T> action) {
+        String previous = CURRENT.get();
+        set(correlationId);
+        try {
+            return action.get();
+        } finally {
+            set(previous);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.spring.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base of the custom Flight Recorder events, one per stage of a request. Stack traces are off:
+ * they are the expensive part of an event and the event type already names the stage.
+ */
+@Category({"Spring", "Users"})
+@StackTrace(false)
+abstract class RequestEvent extends Event {
+    @Label("Correlation Id")
+    String correlationId = RequestCorrelation.currentId();
+}
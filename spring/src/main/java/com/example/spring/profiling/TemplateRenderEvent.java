@@ -0,0 +1,19 @@
+package com.example.spring.profiling;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.example.spring.TemplateRender")
+@Label("Template Render")
+@Description("Thymeleaf rendering of one view into the response")
+class TemplateRenderEvent extends RequestEvent {
+    @Label("Template")
+    String template;
+
+    @Label("Bytes")
+    @Description("UTF-8 size of the rendered output before response compression")
+    @DataAmount
+    long bytes;
+}
@@ -1,12 +1,20 @@
 package com.example.spring.repository;
 
 import com.example.spring.model.User;
+import com.example.spring.model.UserNameAndEmail;
+import jakarta.persistence.QueryHint;
 import jakarta.validation.Valid;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface UserRepository extends JpaRepository<@Valid User, Long> {
     List<@Valid User> findAll();
@@ -18,9 +26,27 @@ public interface UserRepository extends JpaRepository<@Valid User, Long> {
     @Query("select u from User u where u.userName like %:pattern% or u.email like %:pattern%")
     List<@Valid User> findByPartOfUsernameOrEmail(String pattern);
 
+    Slice<@Valid User> findAllBy(Pageable pageable);
+
+    @Query("select u from User u where u.userName like %:pattern% or u.email like %:pattern%")
+    Slice<@Valid User> findByPartOfUsernameOrEmail(String pattern, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select u.id as id, u.userName as userName, u.email as email from User u")
+    Stream<UserNameAndEmail> streamAllNamesAndEmails();
+
+    @Modifying
+    @Query("update User u set u.password = :newPassword where u.id = :id and u.password = :oldPassword")
+    int updatePassword(Long id, String oldPassword, String newPassword);
+
+    @Modifying
+    @Query("update User u set u.userName = :newUserName "
+            + "where u.id = :id and u.password = :password and u.userName = :oldUserName")
+    int updateUserName(Long id, String password, String oldUserName, String newUserName);
+
     void deleteById(Long id);
 
-    void deleteByEmail(String email);
+    List<User> deleteByEmail(String email);
 
     void delete(@Valid User user);
 
@@ -0,0 +1,130 @@
+package com.example.spring.search;
+
+import java.util.List;
+
+/**
+ * Walks the keys of a trie in lexicographic order with the count each one has there. A count may
+ * be negative where the trie records changes to the counts of another one.
+ */
+interface KeyCursor {
+    KeyCursor EMPTY = new KeyCursor() {
+        @Override
+        public boolean next() {
+            return false;
+        }
+
+        @Override
+        public String key() {
+            throw new IllegalStateException("no key");
+        }
+
+        @Override
+        public int count() {
+            throw new IllegalStateException("no key");
+        }
+    };
+
+    /**
+     * Moves to the next key, returns false once there is none.
+     */
+    boolean next();
+
+    String key();
+
+    int count();
+
+    /**
+     * Walks the keys of a sorted list, counting repeated keys once per occurrence.
+     */
+    static KeyCursor of(List<String> sortedKeys) {
+        return new KeyCursor() {
+            private int next;
+            private String key;
+            private int count;
+
+            @Override
+            public boolean next() {
+                if (next == sortedKeys.size()) {
+                    return false;
+                }
+                key = sortedKeys.get(next);
+                count = 0;
+                while (next < sortedKeys.size() && sortedKeys.get(next).equals(key)) {
+                    next++;
+                    count++;
+                }
+                return true;
+            }
+
+            @Override
+            public String key() {
+                return key;
+            }
+
+            @Override
+            public int count() {
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Walks the union of {@code cursors}, adding up the counts of a key and skipping keys whose total is not positive.
+     */
+    static KeyCursor merge(List<KeyCursor> cursors) {
+        KeyCursor[] active = cursors.stream().filter(cursor -> cursor != EMPTY).toArray(KeyCursor[]::new);
+        return active.length == 0 ? EMPTY : new MergedCursor(active);
+    }
+
+    final class MergedCursor implements KeyCursor {
+        private final KeyCursor[] cursors;
+        private final boolean[] positioned;
+        private String key;
+        private int count;
+
+        private MergedCursor(KeyCursor[] cursors) {
+            this.cursors = cursors;
+            this.positioned = new boolean[cursors.length];
+            for (int i = 0; i < cursors.length; i++) {
+                positioned[i] = cursors[i].next();
+            }
+        }
+
+        @Override
+        public boolean next() {
+            while (true) {
+                String smallest = null;
+                for (int i = 0; i < cursors.length; i++) {
+                    if (positioned[i] && (smallest == null || cursors[i].key().compareTo(smallest) < 0)) {
+                        smallest = cursors[i].key();
+                    }
+                }
+                if (smallest == null) {
+                    return false;
+                }
+                int total = 0;
+                for (int i = 0; i < cursors.length; i++) {
+                    if (positioned[i] && cursors[i].key().equals(smallest)) {
+                        total += cursors[i].count();
+                        positioned[i] = cursors[i].next();
+                    }
+                }
+                if (total > 0) {
+                    key = smallest;
+                    count = total;
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public String key() {
+            return key;
+        }
+
+        @Override
+        public int count() {
+            return count;
+        }
+    }
+}
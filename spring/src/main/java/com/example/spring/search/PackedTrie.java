@@ -0,0 +1,360 @@
+package com.example.spring.search;
+
+import java.util.Arrays;
+
+/**
+ * Immutable radix trie stored in a few shared arrays instead of an object per node. Nodes are
+ * numbered in preorder: node {@code i} has the edge label {@code [labelStart[i], labelStart[i + 1])}
+ * of {@code labels}, its subtree is the nodes {@code [i, subtreeEnd[i])} and {@code counts[i]} is the
+ * count of the key it ends, 0 if none. Its first child is {@code i + 1} and every further child starts
+ * where the subtree of the previous one ends, so walking the nodes in order lists the keys in order.
+ * Labels take one byte per char when every char is Latin-1, as compact strings do, and two otherwise.
+ */
+final class PackedTrie {
+    static final PackedTrie EMPTY = pack(KeyCursor.EMPTY);
+
+    private final byte[] labels;
+    private final boolean latin1;
+    private final int[] labelStart;
+    private final int[] subtreeEnd;
+    private final int[] counts;
+    private final int keyCount;
+
+    private PackedTrie(byte[] labels, boolean latin1, int[] labelStart, int[] subtreeEnd, int[] counts, int keyCount) {
+        this.labels = labels;
+        this.latin1 = latin1;
+        this.labelStart = labelStart;
+        this.subtreeEnd = subtreeEnd;
+        this.counts = counts;
+        this.keyCount = keyCount;
+    }
+
+    /**
+     * Packs the keys {@code sorted} walks, which must come in lexicographic order with positive counts.
+     */
+    static PackedTrie pack(KeyCursor sorted) {
+        SortedKeys keys = new SortedKeys();
+        while (sorted.next()) {
+            keys.add(sorted.key(), sorted.count());
+        }
+        return new Packer(keys).pack();
+    }
+
+    /**
+     * Number of distinct keys.
+     */
+    int keyCount() {
+        return keyCount;
+    }
+
+    int count(String key) {
+        int node = 0;
+        int offset = 0;
+        while (offset < key.length()) {
+            node = child(node, key.charAt(offset));
+            if (node < 0) {
+                return 0;
+            }
+            int length = labelLength(node);
+            if (commonPrefix(node, key, offset) < length) {
+                return 0;
+            }
+            offset += length;
+        }
+        return counts[node];
+    }
+
+    /**
+     * Walks the keys starting with {@code prefix}.
+     */
+    KeyCursor cursor(String prefix) {
+        int node = 0;
+        int offset = 0;
+        int before = 0;
+        while (offset < prefix.length()) {
+            int child = child(node, prefix.charAt(offset));
+            if (child < 0) {
+                return KeyCursor.EMPTY;
+            }
+            int common = commonPrefix(child, prefix, offset);
+            if (common < labelLength(child) && offset + common < prefix.length()) {
+                return KeyCursor.EMPTY;
+            }
+            before = offset;
+            offset += common;
+            node = child;
+        }
+        return subtreeEnd[node] == node + 1 && counts[node] == 0
+                ? KeyCursor.EMPTY
+                : new Cursor(node, prefix.substring(0, before));
+    }
+
+    private int child(int node, char c) {
+        for (int child = node + 1; child < subtreeEnd[node]; child = subtreeEnd[child]) {
+            char first = charAt(labelStart[child]);
+            if (first == c) {
+                return child;
+            }
+            if (first > c) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private int labelLength(int node) {
+        return labelStart[node + 1] - labelStart[node];
+    }
+
+    private char charAt(int index) {
+        if (latin1) {
+            return (char) (labels[index] & 0xff);
+        }
+        return (char) ((labels[2 * index] & 0xff) << 8 | labels[2 * index + 1] & 0xff);
+    }
+
+    private int commonPrefix(int node, String key, int offset) {
+        int start = labelStart[node];
+        int max = Math.min(labelLength(node), key.length() - offset);
+        int i = 0;
+        while (i < max && charAt(start + i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private void appendLabel(int node, StringBuilder path) {
+        for (int i = labelStart[node]; i < labelStart[node + 1]; i++) {
+            path.append(charAt(i));
+        }
+    }
+
+    /**
+     * Walks the subtree of one node in preorder, keeping the path of labels from the root in a
+     * builder and the subtrees it is inside on a stack, to cut the path back on leaving them.
+     */
+    private final class Cursor implements KeyCursor {
+        private final StringBuilder path;
+        private final int base;
+        private final int end;
+        private int next;
+        private int[] subtreeEnds = new int[16];
+        private int[] pathLengths = new int[16];
+        private int depth;
+        private String key;
+        private int count;
+
+        Cursor(int start, String before) {
+            this.path = new StringBuilder(before);
+            this.base = before.length();
+            this.end = subtreeEnd[start];
+            this.next = start;
+        }
+
+        @Override
+        public boolean next() {
+            while (next < end) {
+                int node = next++;
+                while (depth > 0 && subtreeEnds[depth - 1] <= node) {
+                    depth--;
+                }
+                path.setLength(depth == 0 ? base : pathLengths[depth - 1]);
+                appendLabel(node, path);
+                push(subtreeEnd[node], path.length());
+                if (counts[node] != 0) {
+                    key = path.toString();
+                    count = counts[node];
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void push(int subtreeEnd, int pathLength) {
+            if (depth == subtreeEnds.length) {
+                subtreeEnds = Arrays.copyOf(subtreeEnds, depth * 2);
+                pathLengths = Arrays.copyOf(pathLengths, depth * 2);
+            }
+            subtreeEnds[depth] = subtreeEnd;
+            pathLengths[depth] = pathLength;
+            depth++;
+        }
+
+        @Override
+        public String key() {
+            return key;
+        }
+
+        @Override
+        public int count() {
+            return count;
+        }
+    }
+
+    /**
+     * The keys to pack with their counts, one byte per char for as long as every char is Latin-1.
+     */
+    private static final class SortedKeys {
+        private byte[] chars = new byte[1024];
+        private boolean latin1 = true;
+        private int[] starts = new int[65];
+        private int[] counts = new int[64];
+        private int size;
+        private int length;
+
+        void add(String key, int count) {
+            if (latin1 && !isLatin1(key)) {
+                inflate();
+            }
+            int bytes = latin1 ? length + key.length() : 2 * (length + key.length());
+            if (bytes > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, bytes));
+            }
+            if (size == counts.length) {
+                counts = Arrays.copyOf(counts, size * 2);
+                starts = Arrays.copyOf(starts, size * 2 + 1);
+            }
+            for (int i = 0; i < key.length(); i++) {
+                put(length + i, key.charAt(i));
+            }
+            counts[size] = count;
+            length += key.length();
+            starts[++size] = length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int length(int key) {
+            return starts[key + 1] - starts[key];
+        }
+
+        int count(int key) {
+            return counts[key];
+        }
+
+        /**
+         * Char {@code position} of key {@code key}.
+         */
+        char charAt(int key, int position) {
+            return get(starts[key] + position);
+        }
+
+        int commonPrefix(int first, int second) {
+            int max = Math.min(length(first), length(second));
+            int i = 0;
+            while (i < max && charAt(first, i) == charAt(second, i)) {
+                i++;
+            }
+            return i;
+        }
+
+        private char get(int index) {
+            if (latin1) {
+                return (char) (chars[index] & 0xff);
+            }
+            return (char) ((chars[2 * index] & 0xff) << 8 | chars[2 * index + 1] & 0xff);
+        }
+
+        private void put(int index, char c) {
+            if (latin1) {
+                chars[index] = (byte) c;
+            } else {
+                chars[2 * index] = (byte) (c >> 8);
+                chars[2 * index + 1] = (byte) c;
+            }
+        }
+
+        private void inflate() {
+            byte[] inflated = new byte[Math.max(chars.length * 2, 1024)];
+            for (int i = 0; i < length; i++) {
+                inflated[2 * i + 1] = chars[i];
+            }
+            chars = inflated;
+            latin1 = false;
+        }
+
+        private static boolean isLatin1(String key) {
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) > 0xff) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Lays the trie out in preorder. The keys sharing a prefix are a contiguous run of the sorted
+     * keys, and the prefix their node ends is what the first and the last of the run have in common.
+     */
+    private static final class Packer {
+        private final SortedKeys keys;
+        private byte[] labels;
+        private final int[] labelStart;
+        private final int[] subtreeEnd;
+        private final int[] counts;
+        private int nodes;
+        private int labelLength;
+
+        Packer(SortedKeys keys) {
+            this.keys = keys;
+            // a leaf per key and at most one node with several children per key after the first
+            int maxNodes = 2 * keys.size() + 1;
+            this.labelStart = new int[maxNodes + 1];
+            this.subtreeEnd = new int[maxNodes];
+            this.counts = new int[maxNodes];
+            this.labels = new byte[Math.max(16, keys.chars.length / 2)];
+        }
+
+        PackedTrie pack() {
+            emit(0, keys.size(), 0, 0);
+            labelStart[nodes] = labelLength;
+            int bytes = keys.latin1 ? labelLength : 2 * labelLength;
+            return new PackedTrie(Arrays.copyOf(labels, bytes), keys.latin1, Arrays.copyOf(labelStart, nodes + 1),
+                    Arrays.copyOf(subtreeEnd, nodes), Arrays.copyOf(counts, nodes), keys.size());
+        }
+
+        /**
+         * Emits the node for keys {@code [first, last)}, which have the first {@code to} chars in
+         * common, with the label {@code [from, to)} of those chars, followed by its subtree.
+         */
+        private void emit(int first, int last, int from, int to) {
+            int node = nodes++;
+            labelStart[node] = labelLength;
+            for (int i = from; i < to; i++) {
+                appendLabel(keys.charAt(first, i));
+            }
+            int key = first;
+            if (key < last && keys.length(key) == to) {
+                counts[node] = keys.count(key);
+                key++;
+            }
+            while (key < last) {
+                char c = keys.charAt(key, to);
+                int end = key + 1;
+                while (end < last && keys.charAt(end, to) == c) {
+                    end++;
+                }
+                emit(key, end, to, keys.commonPrefix(key, end - 1));
+                key = end;
+            }
+            subtreeEnd[node] = nodes;
+        }
+
+        private void appendLabel(char c) {
+            int bytes = keys.latin1 ? labelLength + 1 : 2 * (labelLength + 1);
+            if (bytes > labels.length) {
+                labels = Arrays.copyOf(labels, Math.max(labels.length * 2, bytes));
+            }
+            if (keys.latin1) {
+                labels[labelLength] = (byte) c;
+            } else {
+                labels[2 * labelLength] = (byte) (c >> 8);
+                labels[2 * labelLength + 1] = (byte) c;
+            }
+            labelLength++;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.example.spring.search;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Radix trie over strings that keeps a count per key, so the same string may be added several times.
+ * The keys are held in a {@link PackedTrie}, a few shared arrays that cannot change. Adds and removes
+ * go to a small trie of immutable nodes holding count changes, where an update copies only the path
+ * it touches; once it has grown it is merged into a new packed trie in the background. Readers walk
+ * a consistent snapshot of both without locking while writers, one at a time, swap in a new one.
+ */
+public class RadixTrie {
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final Node NO_CHANGES = new Node("", NO_CHILDREN, 0);
+    // changes merged into the packed keys at once: at least this many, and otherwise a share of the keys
+    private static final int MIN_CHANGES_PER_MERGE = 1024;
+    private static final int KEYS_PER_CHANGE_MERGED = 8;
+
+    private final Executor merger;
+    private volatile Snapshot snapshot;
+    private volatile int size;
+    private int changes;
+    private boolean mergeRunning;
+
+    /**
+     * The packed keys, the changes being merged into them, and the changes made since the merge started.
+     */
+    private record Snapshot(PackedTrie packed, Node merging, Node changes) {
+    }
+
+    public RadixTrie() {
+        this(PackedTrie.EMPTY, 0, RadixTrie::mergeInBackground);
+    }
+
+    /**
+     * Merges changes into the packed keys on {@code merger} instead of a thread of its own.
+     */
+    public RadixTrie(Executor merger) {
+        this(PackedTrie.EMPTY, 0, merger);
+    }
+
+    private RadixTrie(PackedTrie packed, int size, Executor merger) {
+        this.snapshot = new Snapshot(packed, NO_CHANGES, NO_CHANGES);
+        this.size = size;
+        this.merger = merger;
+    }
+
+    public synchronized void add(String key) {
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(current.packed, current.merging, update(current.changes, key, 0, 1));
+        size++;
+        changed();
+    }
+
+    public synchronized void remove(String key) {
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+        Snapshot current = snapshot;
+        if (current.packed.count(key) + count(current.merging, key) + count(current.changes, key) <= 0) {
+            return;
+        }
+        snapshot = new Snapshot(current.packed, current.merging, update(current.changes, key, 0, -1));
+        size--;
+        changed();
+    }
+
+    /**
+     * Returns up to {@code limit} distinct keys starting with {@code prefix} in lexicographic order.
+     */
+    public List<String> findByPrefix(String prefix, int limit) {
+        Snapshot current = snapshot;
+        KeyCursor keys = KeyCursor.merge(List.of(
+                current.packed.cursor(prefix), cursor(current.merging, prefix), cursor(current.changes, prefix)));
+        List<String> result = new ArrayList<>(Math.min(limit, 16));
+        while (result.size() < limit && keys.next()) {
+            result.add(keys.key());
+        }
+        return result;
+    }
+
+    /**
+     * Number of keys in the trie, counting repeated keys once per {@link #add}.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void changed() {
+        changes++;
+        mergeIfDue();
+    }
+
+    private void mergeIfDue() {
+        if (mergeRunning || changes < Math.max(MIN_CHANGES_PER_MERGE, snapshot.packed.keyCount() / KEYS_PER_CHANGE_MERGED)) {
+            return;
+        }
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(current.packed, current.changes, NO_CHANGES);
+        changes = 0;
+        mergeRunning = true;
+        merger.execute(this::merge);
+    }
+
+    /**
+     * Packs the keys with the changes being merged applied. Only this merge replaces those two, so
+     * they are read without the lock; the changes made meanwhile stay on top of the new packed keys.
+     */
+    private void merge() {
+        Snapshot current = snapshot;
+        PackedTrie merged = PackedTrie.pack(KeyCursor.merge(List.of(current.packed.cursor(""), cursor(current.merging, ""))));
+        synchronized (this) {
+            snapshot = new Snapshot(merged, NO_CHANGES, snapshot.changes);
+            mergeRunning = false;
+            mergeIfDue();
+        }
+    }
+
+    private static void mergeInBackground(Runnable merge) {
+        Thread.ofVirtual().name("radix-trie-merge").start(merge);
+    }
+
+    private static Node update(Node node, String key, int offset, int delta) {
+        if (offset == key.length()) {
+            return new Node(node.label, node.children, node.count + delta);
+        }
+        int index = find(node.children, key.charAt(offset));
+        if (index < 0) {
+            return node.withChildInserted(-index - 1, new Node(key.substring(offset), NO_CHILDREN, delta));
+        }
+        Node child = node.children[index];
+        int common = commonPrefix(child.label, key, offset);
+        if (common < child.label.length()) {
+            Node lower = new Node(child.label.substring(common), child.children, child.count);
+            child = new Node(child.label.substring(0, common), new Node[]{lower}, 0);
+        }
+        return node.withChildReplaced(index, compact(update(child, key, offset + common, delta)));
+    }
+
+    /**
+     * Drops nodes whose count no longer changes and merges a node without a change into its only child.
+     */
+    private static Node compact(Node node) {
+        if (node.count != 0 || node.children.length > 1) {
+            return node;
+        }
+        if (node.children.length == 0) {
+            return null;
+        }
+        Node child = node.children[0];
+        return new Node(node.label + child.label, child.children, child.count);
+    }
+
+    private static int count(Node node, String key) {
+        int offset = 0;
+        while (offset < key.length()) {
+            int index = find(node.children, key.charAt(offset));
+            if (index < 0) {
+                return 0;
+            }
+            node = node.children[index];
+            if (!key.startsWith(node.label, offset)) {
+                return 0;
+            }
+            offset += node.label.length();
+        }
+        return node.count;
+    }
+
+    private static KeyCursor cursor(Node node, String prefix) {
+        int offset = 0;
+        int before = 0;
+        while (offset < prefix.length()) {
+            int index = find(node.children, prefix.charAt(offset));
+            if (index < 0) {
+                return KeyCursor.EMPTY;
+            }
+            Node child = node.children[index];
+            int common = commonPrefix(child.label, prefix, offset);
+            if (common < child.label.length() && offset + common < prefix.length()) {
+                return KeyCursor.EMPTY;
+            }
+            before = offset;
+            offset += common;
+            node = child;
+        }
+        return node.count == 0 && node.children.length == 0
+                ? KeyCursor.EMPTY
+                : new NodeCursor(node, prefix.substring(0, before));
+    }
+
+    private static int find(Node[] children, char c) {
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = children[mid].label.charAt(0);
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int commonPrefix(String label, String key, int offset) {
+        int max = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Collects keys for a trie built in one go, as when loading a table. They are sorted and packed a
+     * chunk at a time and the chunks merged at the end, so they are never all held as strings at once.
+     */
+    public static class Builder {
+        private static final int CHUNK_SIZE = 1 << 18;
+
+        private final List<String> chunk = new ArrayList<>();
+        private final List<PackedTrie> packed = new ArrayList<>();
+        private int size;
+
+        public Builder add(String key) {
+            if (key == null || key.isEmpty()) {
+                return this;
+            }
+            chunk.add(key);
+            size++;
+            if (chunk.size() == CHUNK_SIZE) {
+                packChunk();
+            }
+            return this;
+        }
+
+        public RadixTrie build() {
+            packChunk();
+            PackedTrie keys = packed.size() == 1
+                    ? packed.get(0)
+                    : PackedTrie.pack(KeyCursor.merge(packed.stream().map(trie -> trie.cursor("")).toList()));
+            packed.clear();
+            return new RadixTrie(keys, size, RadixTrie::mergeInBackground);
+        }
+
+        private void packChunk() {
+            chunk.sort(null);
+            packed.add(PackedTrie.pack(KeyCursor.of(chunk)));
+            chunk.clear();
+        }
+    }
+
+    /**
+     * Walks the subtree of a node of the changes in preorder.
+     */
+    private static final class NodeCursor implements KeyCursor {
+        private final StringBuilder path;
+        private final Deque<Frame> stack = new ArrayDeque<>();
+        private String key;
+        private int count;
+
+        private static final class Frame {
+            final Node node;
+            final int pathLength;
+            int nextChild = -1;
+
+            Frame(Node node, int pathLength) {
+                this.node = node;
+                this.pathLength = pathLength;
+            }
+        }
+
+        NodeCursor(Node start, String before) {
+            this.path = new StringBuilder(before).append(start.label);
+            stack.push(new Frame(start, path.length()));
+        }
+
+        @Override
+        public boolean next() {
+            while (!stack.isEmpty()) {
+                Frame frame = stack.peek();
+                if (frame.nextChild < 0) {
+                    frame.nextChild = 0;
+                    if (frame.node.count != 0) {
+                        key = path.toString();
+                        count = frame.node.count;
+                        return true;
+                    }
+                }
+                if (frame.nextChild < frame.node.children.length) {
+                    Node child = frame.node.children[frame.nextChild++];
+                    path.setLength(frame.pathLength);
+                    path.append(child.label);
+                    stack.push(new Frame(child, path.length()));
+                } else {
+                    stack.pop();
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String key() {
+            return key;
+        }
+
+        @Override
+        public int count() {
+            return count;
+        }
+    }
+
+    private record Node(String label, Node[] children, int count) {
+
+        Node withChildInserted(int index, Node child) {
+            Node[] updated = new Node[children.length + 1];
+            System.arraycopy(children, 0, updated, 0, index);
+            updated[index] = child;
+            System.arraycopy(children, index, updated, index + 1, children.length - index);
+            return new Node(label, updated, count);
+        }
+
+        Node withChildReplaced(int index, Node child) {
+            if (child == null) {
+                Node[] updated = children.length == 1 ? NO_CHILDREN : new Node[children.length - 1];
+                System.arraycopy(children, 0, updated, 0, index);
+                System.arraycopy(children, index + 1, updated, index, children.length - index - 1);
+                return new Node(label, updated, count);
+            }
+            Node[] updated = children.clone();
+            updated[index] = child;
+            return new Node(label, updated, count);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.spring.search;
+
+import com.example.spring.changes.UserChangeSubscriber;
+import com.example.spring.model.UserNameAndEmail;
+import com.example.spring.repository.UserRepository;
+import com.example.spring.service.UserChangedEvent;
+import com.example.spring.sharding.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * In-memory prefix index over the user names and emails of {@code Users2}, used for typeahead.
+ * It is loaded once at startup, before the instance reports ready, and then kept up to date
+ * from local {@link UserChangedEvent}s and changes made by other instances. Changes that arrive
+ * while a resync reads the table are applied to the old trie and replayed onto the new one.
+ */
+@Component
+@Slf4j
+public class UserPrefixIndex implements UserChangeSubscriber {
+    private volatile RadixTrie trie = new RadixTrie();
+    private final Object lock = new Object();
+    /**
+     * Changes seen while {@link #load()} reads the table, null otherwise. Guarded by {@link #lock}.
+     */
+    private List<UserChangedEvent> pending;
+    private final UserRepository userRepository;
+    private final ShardRouter shardRouter;
+
+    public UserPrefixIndex(UserRepository userRepository, ShardRouter shardRouter) {
+        this.userRepository = userRepository;
+        this.shardRouter = shardRouter;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public synchronized void load() {
+        long start = System.nanoTime();
+        synchronized (lock) {
+            pending = new ArrayList<>();
+        }
+        RadixTrie.Builder keys = new RadixTrie.Builder();
+        // user names by id, to tell which pending changes the snapshot already contains
+        Map<Long, String> userNames = new HashMap<>();
+        try {
+            // the stream needs an open transaction, one per shard
+            shardRouter.inTransactionOnEachShard(() -> {
+                try (Stream<UserNameAndEmail> rows = userRepository.streamAllNamesAndEmails()) {
+                    rows.forEach(row -> {
+                        // a user being moved by a rebalance is briefly stored on two shards
+                        if (!userNames.containsKey(row.getId())) {
+                            userNames.put(row.getId(), row.getUserName());
+                            keys.add(row.getUserName());
+                            keys.add(row.getEmail());
+                        }
+                    });
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (lock) {
+                pending = null;
+            }
+            throw e;
+        }
+        RadixTrie loaded = keys.build();
+        synchronized (lock) {
+            for (UserChangedEvent event : pending) {
+                replay(event, loaded, userNames);
+            }
+            log.info("Loaded {} keys into the user prefix index in {} ms, replayed {} concurrent changes",
+                    loaded.size(), (System.nanoTime() - start) / 1_000_000, pending.size());
+            pending = null;
+            trie = loaded;
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        apply(event);
+    }
+
+    @Override
+    public void onRemoteChanges(List<UserChangedEvent> events) {
+        events.forEach(this::apply);
+    }
+
+    @Override
+    public void resync() {
+        load();
+    }
+
+    private void apply(UserChangedEvent event) {
+        synchronized (lock) {
+            if (pending != null) {
+                pending.add(event);
+            }
+            apply(event, trie);
+        }
+    }
+
+    /**
+     * Applies a change that arrived during a load unless the loaded snapshot already contains it.
+     */
+    private static void replay(UserChangedEvent event, RadixTrie trie, Map<Long, String> userNames) {
+        boolean known = userNames.containsKey(event.id());
+        switch (event.type()) {
+            case CREATED -> {
+                if (!known) {
+                    userNames.put(event.id(), event.userName());
+                    apply(event, trie);
+                }
+            }
+            case RENAMED -> {
+                if (known && Objects.equals(userNames.get(event.id()), event.oldUserName())) {
+                    userNames.put(event.id(), event.userName());
+                    apply(event, trie);
+                }
+            }
+            case DELETED -> {
+                if (known) {
+                    trie.remove(userNames.remove(event.id()));
+                    trie.remove(event.email());
+                }
+            }
+            case PASSWORD_CHANGED -> {
+                // names and emails are unchanged
+            }
+        }
+    }
+
+    private static void apply(UserChangedEvent event, RadixTrie trie) {
+        switch (event.type()) {
+            case CREATED -> {
+                trie.add(event.userName());
+                trie.add(event.email());
+            }
+            case RENAMED -> {
+                trie.remove(event.oldUserName());
+                trie.add(event.userName());
+            }
+            case DELETED -> {
+                trie.remove(event.userName());
+                trie.remove(event.email());
+            }
+            case PASSWORD_CHANGED -> {
+                // names and emails are unchanged
+            }
+        }
+    }
+
+    public List<String> findByPrefix(String prefix, int limit) {
+        return trie.findByPrefix(prefix, limit);
+    }
+}
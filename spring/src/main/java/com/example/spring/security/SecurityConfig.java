@@ -1,5 +1,6 @@
 package com.example.spring.security;
 
+import com.example.spring.profiling.ProfiledPasswordEncoder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -10,6 +11,6 @@ public class SecurityConfig {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new ProfiledPasswordEncoder(new BCryptPasswordEncoder());
     }
 }
\ No newline at end of file
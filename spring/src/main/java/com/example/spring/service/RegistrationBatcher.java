@@ -0,0 +1,313 @@
+package com.example.spring.service;
+
+import com.example.spring.model.User;
+import com.example.spring.profiling.RequestCorrelation;
+import com.example.spring.sharding.ShardRouter;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in group commit for registrations. Passwords are hashed on a small pool, then a single flusher
+ * thread collects hashed users for up to {@code max-delay-ms} or {@code max-batch-size} entries and
+ * writes them with one multi-row insert in one transaction, so many registrations share one commit.
+ * Every caller still gets its own outcome: its saved user, a {@link ConstraintViolationException} or
+ * a {@link DuplicateKeyException} when the email is already taken. With several shards a batch is
+ * split by the shard of each email and commits once per shard; during a rebalance the emails are
+ * also looked up on their previous shard first.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "app.registration.batching.enabled", havingValue = "true")
+public class RegistrationBatcher {
+    private static final String INSERT_PREFIX = "insert into users2 (user_name, email, password) values ";
+    private static final String EXISTING_EMAILS = "select email from users2 where email in (:emails)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ShardRouter shardRouter;
+
+    private final BlockingQueue<PendingRegistration> queue;
+    private final ExecutorService hashExecutor;
+    private final Thread flusher;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private volatile boolean running = true;
+
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong registrations = new AtomicLong();
+
+    private record PendingRegistration(User user, CompletableFuture<User> result) {
+    }
+
+    public RegistrationBatcher(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                               Validator validator, PasswordEncoder passwordEncoder,
+                               ApplicationEventPublisher eventPublisher, ShardRouter shardRouter,
+                               @Value("${app.registration.batching.max-batch-size:64}") int maxBatchSize,
+                               @Value("${app.registration.batching.max-delay-ms:5}") long maxDelayMs,
+                               @Value("${app.registration.batching.queue-capacity:4096}") int queueCapacity,
+                               @Value("${app.registration.batching.hash-threads:0}") int hashThreads) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+        this.passwordEncoder = passwordEncoder;
+        this.eventPublisher = eventPublisher;
+        this.shardRouter = shardRouter;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.hashExecutor = Executors.newFixedThreadPool(
+                hashThreads > 0 ? hashThreads : Runtime.getRuntime().availableProcessors());
+        this.flusher = Thread.ofPlatform().name("registration-flusher").daemon().start(this::runFlusher);
+    }
+
+    /**
+     * Blocks until the batch holding {@code user} has committed and returns it with its id set.
+     */
+    public User register(User user) {
+        try {
+            return submit(user).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<User> submit(User user) {
+        Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if (!violations.isEmpty()) {
+            return CompletableFuture.failedFuture(new ConstraintViolationException(violations));
+        }
+        CompletableFuture<User> result = new CompletableFuture<>();
+        String correlationId = RequestCorrelation.currentId();
+        hashExecutor.execute(() -> {
+            try {
+                user.setPassword(RequestCorrelation.with(correlationId, () -> passwordEncoder.encode(user.getPassword())));
+                queue.put(new PendingRegistration(user, result));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.completeExceptionally(e);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    public long commitCount() {
+        return commits.get();
+    }
+
+    public long registrationCount() {
+        return registrations.get();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        hashExecutor.shutdown();
+        hashExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void runFlusher() {
+        List<PendingRegistration> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRegistration first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingRegistration next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Registration batch of {} failed", batch.size(), e);
+                batch.forEach(pending -> pending.result().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingRegistration> submitted) {
+        List<PendingRegistration> batch = rejectOnPreviousShards(submitted);
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (shardRouter.shardCount() == 1) {
+            flushShard(batch);
+            return;
+        }
+        Map<Integer, List<PendingRegistration>> byShard = new TreeMap<>();
+        for (PendingRegistration pending : batch) {
+            byShard.computeIfAbsent(shardRouter.shardFor(pending.user().getEmail()), shard -> new ArrayList<>())
+                    .add(pending);
+        }
+        byShard.forEach((shard, entries) -> shardRouter.onShard(shard, () -> {
+            flushShard(entries);
+            return null;
+        }));
+    }
+
+    private void flushShard(List<PendingRegistration> batch) {
+        List<PendingRegistration> accepted;
+        try {
+            accepted = transactionTemplate.execute(status -> {
+                List<PendingRegistration> unique = rejectDuplicates(batch);
+                if (!unique.isEmpty()) {
+                    insert(unique);
+                }
+                // published inside the transaction so transactional listeners see the commit or rollback
+                for (PendingRegistration pending : unique) {
+                    User user = pending.user();
+                    eventPublisher.publishEvent(UserChangedEvent.created(user.getId(), user.getEmail(), user.getUserName()));
+                }
+                return unique;
+            });
+        } catch (DataAccessException e) {
+            if (batch.size() == 1) {
+                batch.get(0).result().completeExceptionally(e);
+                return;
+            }
+            // one bad row must not fail its neighbours, so retry them one commit each
+            log.warn("Registration batch of {} failed, retrying entries one by one", batch.size(), e);
+            batch.stream()
+                    .filter(pending -> !pending.result().isDone())
+                    .forEach(pending -> flushShard(List.of(pending)));
+            return;
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+        commits.incrementAndGet();
+        registrations.addAndGet(accepted.size());
+        for (PendingRegistration pending : accepted) {
+            pending.result().complete(pending.user());
+        }
+    }
+
+    /**
+     * Fails entries whose email is still on its shard of the previous layout, not moved yet by a
+     * rebalance and so unseen by the new shard, and returns the rest.
+     */
+    private List<PendingRegistration> rejectOnPreviousShards(List<PendingRegistration> batch) {
+        Map<Integer, Set<String>> byPreviousShard = new TreeMap<>();
+        for (PendingRegistration pending : batch) {
+            String email = pending.user().getEmail();
+            int previous = shardRouter.previousShardFor(email);
+            if (previous != shardRouter.shardFor(email)) {
+                byPreviousShard.computeIfAbsent(previous, shard -> new HashSet<>()).add(email);
+            }
+        }
+        if (byPreviousShard.isEmpty()) {
+            return batch;
+        }
+        Set<String> taken = new HashSet<>();
+        byPreviousShard.forEach((shard, emails) -> taken.addAll(shardRouter.onShard(shard,
+                () -> namedParameterJdbcTemplate.queryForList(EXISTING_EMAILS, Map.of("emails", emails), String.class))));
+
+        List<PendingRegistration> rest = new ArrayList<>(batch.size());
+        for (PendingRegistration pending : batch) {
+            String email = pending.user().getEmail();
+            if (taken.contains(email)) {
+                pending.result().completeExceptionally(
+                        new DuplicateKeyException("a user with email " + email + " already exists"));
+            } else {
+                rest.add(pending);
+            }
+        }
+        return rest;
+    }
+
+    /**
+     * Fails entries whose email is already stored or appears earlier in the same batch and returns the rest.
+     */
+    private List<PendingRegistration> rejectDuplicates(List<PendingRegistration> batch) {
+        Set<String> emails = new HashSet<>();
+        batch.forEach(pending -> emails.add(pending.user().getEmail()));
+        Set<String> taken = new HashSet<>(namedParameterJdbcTemplate.queryForList(
+                EXISTING_EMAILS, Map.of("emails", emails), String.class));
+
+        List<PendingRegistration> unique = new ArrayList<>(batch.size());
+        for (PendingRegistration pending : batch) {
+            String email = pending.user().getEmail();
+            if (taken.add(email)) {
+                unique.add(pending);
+            } else {
+                pending.result().completeExceptionally(
+                        new DuplicateKeyException("a user with email " + email + " already exists"));
+            }
+        }
+        return unique;
+    }
+
+    private void insert(List<PendingRegistration> batch) {
+        String sql = INSERT_PREFIX + String.join(", ", Collections.nCopies(batch.size(), "(?, ?, ?)"));
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql, new String[]{"user_id"});
+            int index = 1;
+            for (PendingRegistration pending : batch) {
+                statement.setString(index++, pending.user().getUserName());
+                statement.setString(index++, pending.user().getEmail());
+                statement.setString(index++, pending.user().getPassword());
+            }
+            return statement;
+        }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).user().setId(((Number) keys.get(i).values().iterator().next()).longValue());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.spring.service;
+
+/**
+ * Published by {@link UserService} after a user row was created, renamed, deleted or given a new
+ * password. {@code oldUserName} is only set for renames. Events never carry password hashes.
+ */
+public record UserChangedEvent(Type type, Long id, String email, String oldUserName, String userName) {
+
+    public enum Type {
+        CREATED, RENAMED, DELETED, PASSWORD_CHANGED
+    }
+
+    public static UserChangedEvent created(Long id, String email, String userName) {
+        return new UserChangedEvent(Type.CREATED, id, email, null, userName);
+    }
+
+    public static UserChangedEvent renamed(Long id, String email, String oldUserName, String userName) {
+        return new UserChangedEvent(Type.RENAMED, id, email, oldUserName, userName);
+    }
+
+    public static UserChangedEvent passwordChanged(Long id, String email, String userName) {
+        return new UserChangedEvent(Type.PASSWORD_CHANGED, id, email, null, userName);
+    }
+
+    public static UserChangedEvent deleted(Long id, String email, String userName) {
+        return new UserChangedEvent(Type.DELETED, id, email, null, userName);
+    }
+}
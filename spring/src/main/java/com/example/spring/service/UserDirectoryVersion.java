@@ -0,0 +1,95 @@
+package com.example.spring.service;
+
+import com.example.spring.repository.UserRepository;
+import com.example.spring.sharding.ShardRouter;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Version stamp of the whole {@code Users2} table. Every shard keeps a counter in
+ * {@code user_directory_version} that is bumped once by each transaction publishing
+ * {@link UserChangedEvent}s, so every instance reads the same stamp and anything derived from the
+ * table may be reused while it stays equal. The bump runs right before commit, after the pending
+ * changes are flushed, so the row lock it takes is the last lock of the transaction and is held only
+ * for the commit itself. The counter is split over {@code STRIPES} rows and a transaction bumps a
+ * random one, so concurrent commits on a shard only wait for each other when they pick the same row.
+ */
+@Component
+public class UserDirectoryVersion {
+    private static final int STRIPES = 16;
+    private static final String CREATE_TABLE = """
+            create table if not exists user_directory_version (
+                id int primary key,
+                version bigint not null
+            )""";
+    private static final String INSERT_IF_ABSENT = "insert into user_directory_version (id, version) "
+            + "select ?, 0 where not exists (select 1 from user_directory_version where id = ?)";
+    private static final String BUMP = "update user_directory_version set version = version + 1 where id = ?";
+    private static final String SELECT = "select sum(version) from user_directory_version";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final UserRepository userRepository;
+
+    public UserDirectoryVersion(JdbcTemplate jdbcTemplate, ShardRouter shardRouter, UserRepository userRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.userRepository = userRepository;
+        shardRouter.forEachShard(shard -> {
+            jdbcTemplate.execute(CREATE_TABLE);
+            // row 1 was the whole counter before it was striped, the sum carries its count on
+            for (int stripe = 1; stripe <= STRIPES; stripe++) {
+                try {
+                    jdbcTemplate.update(INSERT_IF_ABSENT, stripe, stripe);
+                } catch (DuplicateKeyException e) {
+                    // another instance starting at the same time created the row
+                }
+            }
+        });
+    }
+
+    /**
+     * Registers the bump with the transaction on its first event, or bumps right away outside one.
+     */
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            bump();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                // Hibernate would flush only after this, locking user rows while holding the version row
+                userRepository.flush();
+                bump();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(UserDirectoryVersion.this);
+            }
+        });
+    }
+
+    private void bump() {
+        jdbcTemplate.update(BUMP, ThreadLocalRandom.current().nextInt(STRIPES) + 1);
+    }
+
+    public String current() {
+        return shardRouter.onAllShards(() -> jdbcTemplate.queryForObject(SELECT, Long.class)).stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining("."));
+    }
+}
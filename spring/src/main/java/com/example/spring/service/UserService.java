@@ -1,63 +1,127 @@
 package com.example.spring.service;
 
 import com.example.spring.model.User;
+import com.example.spring.profiling.ProfiledPasswordEncoder;
 import com.example.spring.repository.UserRepository;
+import com.example.spring.sharding.ShardRouter;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.lang.Nullable;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+/**
+ * Point operations run on the shard that holds the email and open their transaction there;
+ * lists and searches query all shards in parallel and merge the results in id order.
+ */
 @Service
 public class UserService {
+    private static final Comparator<User> BY_ID = Comparator.comparing(User::getId);
+    private static final int MAX_UPDATE_ATTEMPTS = 3;
+    private static final String UNIQUE_VIOLATION = "23505";
+
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private final ApplicationEventPublisher eventPublisher;
+    private final ShardRouter shardRouter;
+    private final RegistrationBatcher registrationBatcher;
+    private final PasswordEncoder passwordEncoder = new ProfiledPasswordEncoder(new BCryptPasswordEncoder());
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, ApplicationEventPublisher eventPublisher,
+                       ShardRouter shardRouter, @Nullable RegistrationBatcher registrationBatcher) {
         this.userRepository = userRepository;
+        this.eventPublisher = eventPublisher;
+        this.shardRouter = shardRouter;
+        this.registrationBatcher = registrationBatcher;
     }
 
     public User saveUser(User user) {
+        if (registrationBatcher != null) {
+            return registrationBatcher.register(user);
+        }
+        // hashed before the transaction so no connection is held while BCrypt runs
         String encodedPassword = passwordEncoder.encode(user.getPassword());
         user.setPassword(encodedPassword);
-        return userRepository.save(user);
+        rejectIfOnPreviousShard(user.getEmail());
+        try {
+            return shardRouter.inTransactionOnShard(shardRouter.shardFor(user.getEmail()), () -> {
+                User savedUser = userRepository.save(user);
+                eventPublisher.publishEvent(UserChangedEvent.created(savedUser.getId(), savedUser.getEmail(), savedUser.getUserName()));
+                return savedUser;
+            });
+        } catch (DataIntegrityViolationException e) {
+            // JPA reports the unique email constraint like any other, the batched JDBC path already says duplicate key
+            if (!(e instanceof DuplicateKeyException) && isUniqueViolation(e)) {
+                throw new DuplicateKeyException("a user with email " + user.getEmail() + " already exists", e);
+            }
+            throw e;
+        }
     }
 
     public User updateUser(User user) {
-        return userRepository.save(user);
+        return shardRouter.onShard(shardOf(user.getEmail()), () -> userRepository.save(user));
     }
 
     public void deleteUser(User user) {
-        userRepository.delete(user);
+        deleteOnShardOf(user.getEmail(), () -> userRepository.findById(user.getId())
+                .map(found -> {
+                    userRepository.delete(found);
+                    return List.of(found);
+                })
+                .orElse(List.of()));
     }
 
     public void deleteUserById(Long id) {
-        userRepository.deleteById(id);
+        findById(id).ifPresent(this::deleteUser);
     }
 
     public void deleteByEmail(String email) {
-        userRepository.deleteByEmail(email);
+        deleteOnShardOf(email, () -> userRepository.deleteByEmail(email));
     }
 
     public List<User> findAll() {
-        return userRepository.findAll();
+        return gather(userRepository::findAll);
     }
 
     public List<User> findByPartOfUsernameOrEmail(String pattern) {
-        return userRepository.findByPartOfUsernameOrEmail(pattern);
+        return gather(() -> userRepository.findByPartOfUsernameOrEmail(pattern));
+    }
+
+    public Slice<User> findAll(Pageable pageable) {
+        return gather(userRepository::findAllBy, pageable);
+    }
+
+    public Slice<User> findByPartOfUsernameOrEmail(String pattern, Pageable pageable) {
+        return gather(page -> userRepository.findByPartOfUsernameOrEmail(pattern, page), pageable);
     }
 
     public Optional<User> findById(Long id) {
-        return userRepository.findById(id);
+        return shardRouter.onAllShards(() -> userRepository.findById(id)).stream()
+                .flatMap(Optional::stream)
+                .findFirst();
     }
 
     public Optional<User> findByEmail(String email) {
-        return userRepository.findByEmail(email);
+        return shardRouter.onShard(shardOf(email), () -> userRepository.findByEmail(email));
     }
 
     public boolean authenticate(String email, String password) {
-        Optional<User> optionalUser = userRepository.findByEmail(email);
+        Optional<User> optionalUser = findByEmail(email);
         if (optionalUser.isPresent()) {
             User user = optionalUser.get();
             return passwordEncoder.matches(password, user.getPassword());
@@ -66,28 +130,141 @@ public class UserService {
     }
 
     public boolean changePassword(String email, String oldPassword, String newPassword) {
-        Optional<User> optionalUser = userRepository.findByEmail(email);
-        if (optionalUser.isPresent()) {
-            User user = optionalUser.get();
-            if (passwordEncoder.matches(oldPassword, user.getPassword())) {
-                user.setPassword(passwordEncoder.encode(newPassword));
-                userRepository.save(user);
+        return updateVerified(email, oldPassword, (shard, user) -> {
+            String encodedPassword = passwordEncoder.encode(newPassword);
+            return shardRouter.inTransactionOnShard(shard, () -> {
+                if (userRepository.updatePassword(user.getId(), user.getPassword(), encodedPassword) == 0) {
+                    return false;
+                }
+                eventPublisher.publishEvent(UserChangedEvent.passwordChanged(user.getId(), email, user.getUserName()));
+                return true;
+            });
+        });
+    }
+
+    public boolean changeUsername(String email, String password, String newUsername) {
+        return updateVerified(email, password, (shard, user) -> shardRouter.inTransactionOnShard(shard, () -> {
+            if (userRepository.updateUserName(user.getId(), user.getPassword(), user.getUserName(), newUsername) == 0) {
+                return false;
+            }
+            eventPublisher.publishEvent(UserChangedEvent.renamed(user.getId(), email, user.getUserName(), newUsername));
+            return true;
+        }));
+    }
+
+    /**
+     * Looks the user up and checks {@code password} outside any transaction, so no connection is
+     * held while BCrypt runs, then hands it to {@code update}. The update runs in a short transaction
+     * guarded by the values read and returns false if the row changed in between, or was moved by a
+     * rebalance, in which case the user is read and checked again.
+     */
+    private boolean updateVerified(String email, String password, BiPredicate<Integer, User> update) {
+        for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+            int shard = shardOf(email);
+            Optional<User> user = shardRouter.onShard(shard, () -> userRepository.findByEmail(email));
+            if (user.isEmpty() || !passwordEncoder.matches(password, user.get().getPassword())) {
+                return false;
+            }
+            if (update.test(shard, user.get())) {
                 return true;
             }
         }
         return false;
     }
 
-    public boolean changeUsername(String email, String password, String newUsername) {
-        Optional<User> optionalUser = userRepository.findByEmail(email);
-        if (optionalUser.isPresent()) {
-            User user = optionalUser.get();
-            if (passwordEncoder.matches(password, user.getPassword())) {
-                user.setUserName(newUsername);
-                userRepository.save(user);
+    /**
+     * Runs {@code delete}, which returns the users it removed, in a transaction on the shard holding
+     * {@code email} and publishes their deletion. A rebalance may move the user between the lookup of
+     * its shard and the delete, which then finds no row, or loses the one it read when the move
+     * commits first; while users are being moved either case looks the shard up again.
+     */
+    private void deleteOnShardOf(String email, Supplier<List<User>> delete) {
+        for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+            try {
+                List<User> deleted = shardRouter.inTransactionOnShard(shardOf(email), () -> {
+                    List<User> users = delete.get();
+                    for (User user : users) {
+                        eventPublisher.publishEvent(UserChangedEvent.deleted(user.getId(), user.getEmail(), user.getUserName()));
+                    }
+                    return users;
+                });
+                if (!deleted.isEmpty() || shardRouter.previousShardFor(email) == shardRouter.shardFor(email)) {
+                    return;
+                }
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt == MAX_UPDATE_ATTEMPTS - 1) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * While a rebalance is running a user may still be on its shard of the previous layout, where the
+     * unique email constraint of the new shard cannot see it. Checked before the insert: the move
+     * copies a user to the new shard before deleting it from the old one, so it is always seen on one.
+     */
+    private void rejectIfOnPreviousShard(String email) {
+        int previous = shardRouter.previousShardFor(email);
+        if (previous != shardRouter.shardFor(email)
+                && shardRouter.onShard(previous, () -> userRepository.findByEmail(email)).isPresent()) {
+            throw new DuplicateKeyException("a user with email " + email + " already exists");
+        }
+    }
+
+    /**
+     * Shard holding {@code email}. While a rebalance is running the user may not have been moved
+     * to its new shard yet, in which case it is still on the shard of the previous layout.
+     */
+    private int shardOf(String email) {
+        int shard = shardRouter.shardFor(email);
+        int previous = shardRouter.previousShardFor(email);
+        if (previous != shard && shardRouter.onShard(shard, () -> userRepository.findByEmail(email)).isEmpty()) {
+            return previous;
+        }
+        return shard;
+    }
+
+    private static boolean isUniqueViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && UNIQUE_VIOLATION.equals(sqlException.getSQLState())) {
                 return true;
             }
         }
         return false;
     }
-}
\ No newline at end of file
+
+    private List<User> gather(Supplier<List<User>> query) {
+        if (shardRouter.shardCount() == 1) {
+            return query.get();
+        }
+        List<User> merged = shardRouter.onAllShards(query).stream()
+                .flatMap(List::stream)
+                .sorted(BY_ID)
+                .toList();
+        // a user being moved by a rebalance is briefly stored on two shards
+        List<User> distinct = new ArrayList<>(merged.size());
+        for (User user : merged) {
+            if (distinct.isEmpty() || !distinct.get(distinct.size() - 1).getId().equals(user.getId())) {
+                distinct.add(user);
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Pages across shards are ordered by id. Every shard returns its first offset + size + 1 users,
+     * enough to cut the requested page out of the merge and to tell whether another page follows.
+     */
+    private Slice<User> gather(Function<Pageable, Slice<User>> query, Pageable pageable) {
+        if (shardRouter.shardCount() == 1) {
+            return query.apply(pageable);
+        }
+        int offset = Math.toIntExact(pageable.getOffset());
+        int size = pageable.getPageSize();
+        Pageable head = PageRequest.of(0, offset + size + 1, pageable.getSort());
+        List<User> merged = gather(() -> query.apply(head).getContent());
+        List<User> content = merged.subList(Math.min(offset, merged.size()), Math.min(offset + size, merged.size()));
+        return new SliceImpl<>(new ArrayList<>(content), pageable, merged.size() > offset + size);
+    }
+}
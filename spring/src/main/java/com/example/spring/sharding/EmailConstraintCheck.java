@@ -0,0 +1,34 @@
+package com.example.spring.sharding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports shards whose {@code users2} has no unique email constraint. Adding the constraint fails
+ * on a table that already stores an email twice, and Hibernate gives up on it without a word, so
+ * until the duplicates are cleaned up only the lookup before each insert keeps emails apart.
+ */
+@Component
+@Slf4j
+public class EmailConstraintCheck {
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+
+    public EmailConstraintCheck(JdbcTemplate jdbcTemplate, ShardRouter shardRouter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void check() {
+        shardRouter.forEachShard(shard -> {
+            if (!UserShardSchema.hasEmailConstraint(jdbcTemplate)) {
+                log.warn("users2 on shard {} has no unique constraint on email, most likely because some emails "
+                        + "are stored more than once; remove the duplicates and restart to add it", shard);
+            }
+        });
+    }
+}
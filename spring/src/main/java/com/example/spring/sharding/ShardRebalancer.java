@@ -0,0 +1,117 @@
+package com.example.spring.sharding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Moves users to the shards appended to {@code app.sharding.shards} while the application keeps
+ * serving. Roll out the longer shard list together with {@code app.sharding.previous-shard-count}
+ * set to the old count, so point operations fall back to the old shard of users not moved yet,
+ * then run one extra instance with
+ * <pre>
+ * --app.sharding.rebalance=true --app.warmup.enabled=false --spring.main.web-application-type=none
+ * </pre>
+ * and finally roll out without {@code previous-shard-count}. Each user is moved in a transaction on
+ * its old shard that locks the row for the copy and the delete, so a write on the old shard either
+ * lands before the copy is taken or waits for the move and then finds no row. Once a copy exists,
+ * writes go to it, so a copy left behind by an interrupted run is never overwritten. Moves keep ids
+ * and publish no change events: for everyone but the shards themselves, nothing changed.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+public class ShardRebalancer implements ApplicationRunner {
+    private static final String SELECT_AFTER = "select user_id, user_name, email, password from users2 "
+            + "where user_id > ? order by user_id limit ?";
+    private static final String SELECT_FOR_UPDATE = "select user_id, user_name, email, password from users2 "
+            + "where user_id = ? for update";
+    private static final String INSERT_IF_ABSENT = "insert into users2 (user_id, user_name, email, password) "
+            + "select ?, ?, ?, ? where not exists (select 1 from users2 where user_id = ?)";
+    private static final String DELETE = "delete from users2 where user_id = ?";
+    private static final RowMapper<Row> ROW_MAPPER = (rs, rowNum) -> new Row(
+            rs.getLong("user_id"), rs.getString("user_name"), rs.getString("email"), rs.getString("password"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final ShardingProperties properties;
+
+    private record Row(long id, String userName, String email, String password) {
+    }
+
+    public ShardRebalancer(JdbcTemplate jdbcTemplate, ShardRouter shardRouter, ShardingProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.properties = properties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (properties.isRebalance()) {
+            rebalance();
+        }
+    }
+
+    /**
+     * Moves every user of the previous shards whose email now hashes to another shard and returns
+     * how many were moved.
+     */
+    public long rebalance() {
+        int previousShardCount = properties.getPreviousShardCount();
+        if (previousShardCount == 0) {
+            log.info("app.sharding.previous-shard-count is not set, no users to move");
+            return 0;
+        }
+        long start = System.nanoTime();
+        long moved = 0;
+        for (int source = 0; source < previousShardCount; source++) {
+            moved += drain(source);
+        }
+        log.info("Moved {} users from {} to {} shards in {} ms, app.sharding.previous-shard-count can be removed",
+                moved, previousShardCount, shardRouter.shardCount(), (System.nanoTime() - start) / 1_000_000);
+        return moved;
+    }
+
+    private long drain(int source) {
+        int batchSize = properties.getRebalanceBatchSize();
+        long moved = 0;
+        long lastId = 0;
+        List<Row> rows;
+        do {
+            long after = lastId;
+            rows = shardRouter.onShard(source, () -> jdbcTemplate.query(SELECT_AFTER, ROW_MAPPER, after, batchSize));
+            for (Row row : rows) {
+                lastId = row.id();
+                if (row.email() != null && shardRouter.shardFor(row.email()) != source && move(row.id(), source)) {
+                    moved++;
+                }
+            }
+        } while (rows.size() == batchSize);
+        log.info("Moved {} users off shard {}", moved, source);
+        return moved;
+    }
+
+    /**
+     * Copies the user to its new shard and deletes it from {@code source} while holding its row lock
+     * there, and returns false if it was deleted since the batch was read.
+     */
+    private boolean move(long id, int source) {
+        return shardRouter.inTransactionOnShard(source, () -> {
+            Row row = jdbcTemplate.query(SELECT_FOR_UPDATE, ROW_MAPPER, id).stream().findFirst().orElse(null);
+            if (row == null) {
+                return false;
+            }
+            // an existing copy has taken every write since it was made, keep it
+            shardRouter.inNewTransactionOnShard(shardRouter.shardFor(row.email()), () -> jdbcTemplate.update(
+                    INSERT_IF_ABSENT, row.id(), row.userName(), row.email(), row.password(), row.id()));
+            jdbcTemplate.update(DELETE, row.id());
+            return true;
+        });
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.spring.sharding;
+
+import com.example.spring.profiling.RequestCorrelation;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Maps emails to shards and runs work against a chosen shard. A user lives on the shard picked by
+ * a jump consistent hash of its email, so point operations touch one database and only lists and
+ * searches fan out to all of them. With a single shard every method runs its work inline.
+ * <p>
+ * A shard is selected for the calling thread only, and a transaction is bound to the shard it was
+ * opened on: start transactions through {@link #inTransactionOnShard}, not from outside it.
+ */
+public class ShardRouter {
+    private final int shardCount;
+    private final int previousShardCount;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate newTransactionTemplate;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ShardRouter(int shardCount, int previousShardCount, PlatformTransactionManager transactionManager) {
+        if (previousShardCount >= shardCount) {
+            throw new IllegalArgumentException("shards can only be appended, previous shard count "
+                    + previousShardCount + " must be below " + shardCount);
+        }
+        this.shardCount = shardCount;
+        this.previousShardCount = previousShardCount;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    public int shardFor(String email) {
+        return shardFor(email, shardCount);
+    }
+
+    /**
+     * Shard that held {@code email} before the last shards were appended. It differs from
+     * {@link #shardFor(String)} only while a rebalance is moving that user to a new shard.
+     */
+    public int previousShardFor(String email) {
+        return previousShardCount == 0 ? shardFor(email) : shardFor(email, previousShardCount);
+    }
+
+    public static int shardFor(String email, int shardCount) {
+        return jumpConsistentHash(hash(email), shardCount);
+    }
+
+    public <T> T onShard(int shard, Supplier<T> action) {
+        if (shardCount == 1) {
+            return action.get();
+        }
+        Integer previous = ShardRoutingDataSource.currentShard();
+        ShardRoutingDataSource.setCurrentShard(shard);
+        try {
+            return action.get();
+        } finally {
+            ShardRoutingDataSource.setCurrentShard(previous);
+        }
+    }
+
+    public <T> T inTransactionOnShard(int shard, Supplier<T> action) {
+        return onShard(shard, () -> transactionTemplate.execute(status -> action.get()));
+    }
+
+    /**
+     * Like {@link #inTransactionOnShard}, but suspends the transaction of the caller, which may be
+     * bound to another shard, instead of joining it.
+     */
+    public <T> T inNewTransactionOnShard(int shard, Supplier<T> action) {
+        return onShard(shard, () -> newTransactionTemplate.execute(status -> action.get()));
+    }
+
+    public void forEachShard(IntConsumer action) {
+        for (int shard = 0; shard < shardCount; shard++) {
+            int current = shard;
+            onShard(shard, () -> {
+                action.accept(current);
+                return null;
+            });
+        }
+    }
+
+    public void inTransactionOnEachShard(Runnable action) {
+        forEachShard(shard -> transactionTemplate.executeWithoutResult(status -> action.run()));
+    }
+
+    /**
+     * Runs {@code action} on every shard in parallel and returns the results in shard order.
+     */
+    public <T> List<T> onAllShards(Supplier<T> action) {
+        if (shardCount == 1) {
+            return List.of(action.get());
+        }
+        List<Future<T>> futures = new ArrayList<>(shardCount);
+        String correlationId = RequestCorrelation.currentId();
+        for (int shard = 0; shard < shardCount; shard++) {
+            int current = shard;
+            futures.add(executor.submit(() -> RequestCorrelation.with(correlationId, () -> onShard(current, action))));
+        }
+        List<T> results = new ArrayList<>(shardCount);
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(pending -> pending.cancel(true));
+                throw new IllegalStateException("interrupted while waiting for shards", e);
+            } catch (ExecutionException e) {
+                futures.forEach(pending -> pending.cancel(true));
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes with a murmur3 finalizer, stable across JVMs and releases.
+     */
+    private static long hash(String email) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : email.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Lamping and Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm": going from n to n + 1
+     * buckets only moves keys into the new bucket.
+     */
+    private static int jumpConsistentHash(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.spring.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out connections of the shard selected by {@link ShardRouter} on the calling thread, or of
+ * shard 0 when none is selected, which is where Hibernate reads its metadata and manages the schema.
+ */
+class ShardRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+    private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+
+    private final List<HikariDataSource> shards;
+
+    ShardRoutingDataSource(List<HikariDataSource> shards) {
+        this.shards = shards;
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    static Integer currentShard() {
+        return CURRENT_SHARD.get();
+    }
+
+    static void setCurrentShard(Integer shard) {
+        if (shard == null) {
+            CURRENT_SHARD.remove();
+        } else {
+            CURRENT_SHARD.set(shard);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return CURRENT_SHARD.get();
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.spring.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Without {@code app.sharding.enabled} there is one shard, the regular {@code spring.datasource}.
+ * With it, the application {@link DataSource} routes to one pool per {@code app.sharding.shards[i]},
+ * and {@code Users2} is created on every shard before Hibernate starts.
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig {
+
+    @Bean
+    public ShardRouter shardRouter(ShardingProperties properties, PlatformTransactionManager transactionManager) {
+        if (!properties.isEnabled()) {
+            return new ShardRouter(1, 0, transactionManager);
+        }
+        return new ShardRouter(properties.getShards().size(), properties.getPreviousShardCount(), transactionManager);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+    public DataSource dataSource(ShardingProperties properties) {
+        List<ShardingProperties.Shard> shards = properties.getShards();
+        if (shards.isEmpty()) {
+            throw new IllegalStateException("app.sharding.enabled requires at least one app.sharding.shards entry");
+        }
+        List<HikariDataSource> pools = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            ShardingProperties.Shard shard = shards.get(i);
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("shard-" + i);
+            pool.setJdbcUrl(shard.getUrl());
+            pool.setUsername(shard.getUsername());
+            pool.setPassword(shard.getPassword());
+            pool.setMaximumPoolSize(shard.getMaximumPoolSize());
+            pools.add(pool);
+        }
+        UserShardSchema.prepare(pools.stream().map(JdbcTemplate::new).toList());
+        return new ShardRoutingDataSource(pools);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.spring.sharding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shard layout for {@code Users2}, bound from {@code app.sharding.*}. Shards are only ever appended:
+ * {@link ShardRouter} hashes with jump consistent hashing, so growing the list moves rows from the
+ * existing shards to the new ones and never between existing shards.
+ */
+@ConfigurationProperties("app.sharding")
+public class ShardingProperties {
+    private boolean enabled;
+    private List<Shard> shards = new ArrayList<>();
+    private int previousShardCount;
+    private boolean rebalance;
+    private int rebalanceBatchSize = 500;
+
+    public static class Shard {
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getMaximumPoolSize() {
+            return maximumPoolSize;
+        }
+
+        public void setMaximumPoolSize(int maximumPoolSize) {
+            this.maximumPoolSize = maximumPoolSize;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    public void setShards(List<Shard> shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Shard count before the last shards were appended, while their rows are still being moved;
+     * 0 once the rebalance has finished.
+     */
+    public int getPreviousShardCount() {
+        return previousShardCount;
+    }
+
+    public void setPreviousShardCount(int previousShardCount) {
+        this.previousShardCount = previousShardCount;
+    }
+
+    public boolean isRebalance() {
+        return rebalance;
+    }
+
+    public void setRebalance(boolean rebalance) {
+        this.rebalance = rebalance;
+    }
+
+    public int getRebalanceBatchSize() {
+        return rebalanceBatchSize;
+    }
+
+    public void setRebalanceBatchSize(int rebalanceBatchSize) {
+        this.rebalanceBatchSize = rebalanceBatchSize;
+    }
+}
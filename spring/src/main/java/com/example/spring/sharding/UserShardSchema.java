@@ -0,0 +1,91 @@
+package com.example.spring.sharding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps {@code user_id} globally unique across shards: shard {@code k} of {@code n} draws ids
+ * congruent to {@code k + 1} modulo {@code n}. When the shard count changes every identity is
+ * restarted on its new residue above the largest id in use plus a headroom, which covers ids that
+ * instances still running with the old stride hand out until they pick up the new layout.
+ * Rows moved by {@link ShardRebalancer} keep their ids, which are all below the restart points.
+ * Emails are unique per shard. Across shards they are unique since a user's shard follows from the
+ * email, except while a rebalance runs: a user not moved yet is still on its previous shard, so
+ * registrations check that shard too before inserting on the new one.
+ */
+@Slf4j
+final class UserShardSchema {
+    static final long IDENTITY_HEADROOM = 1_000_000;
+
+    private static final String CREATE_TABLE = """
+            create table if not exists users2 (
+                user_id bigint generated by default as identity (start with %d increment by %d) primary key,
+                user_name varchar(255),
+                email varchar(255),
+                password varchar(255)
+            )""";
+    private static final String EMAIL_CONSTRAINT = "select count(*) from information_schema.table_constraints "
+            + "where lower(table_name) = 'users2' and lower(constraint_name) = 'users2_email_key'";
+    // same name as the constraint Hibernate derives from User, so either one finds the other in place
+    private static final String ADD_EMAIL_CONSTRAINT = "alter table users2 add constraint users2_email_key unique (email)";
+    // the plain index used before emails were unique, the constraint's index serves the same lookups
+    private static final String CREATE_EMAIL_INDEX = "create index if not exists users2_email on users2 (email)";
+    private static final String DROP_EMAIL_INDEX = "drop index if exists users2_email";
+    private static final String IDENTITY_INCREMENT = "select identity_increment from information_schema.columns "
+            + "where lower(table_name) = 'users2' and lower(column_name) = 'user_id'";
+    private static final String RESTART_IDENTITY = "alter table users2 alter column user_id set increment by %d restart with %d";
+
+    private UserShardSchema() {
+    }
+
+    static void prepare(List<JdbcTemplate> shards) {
+        int shardCount = shards.size();
+        List<Long> increments = new ArrayList<>(shardCount);
+        long maxId = 0;
+        for (JdbcTemplate shard : shards) {
+            List<String> increment = shard.queryForList(IDENTITY_INCREMENT, String.class);
+            increments.add(increment.isEmpty() ? null : Long.parseLong(increment.get(0)));
+            if (!increment.isEmpty()) {
+                maxId = Math.max(maxId, shard.queryForObject("select coalesce(max(user_id), 0) from users2", Long.class));
+            }
+        }
+        long base = maxId == 0 ? 0 : maxId + IDENTITY_HEADROOM;
+        for (int shard = 0; shard < shardCount; shard++) {
+            JdbcTemplate jdbcTemplate = shards.get(shard);
+            Long increment = increments.get(shard);
+            long start = firstIdAbove(base, shard, shardCount);
+            if (increment == null) {
+                jdbcTemplate.execute(CREATE_TABLE.formatted(start, shardCount));
+                log.info("Created users2 on shard {} with ids from {} every {}", shard, start, shardCount);
+            } else if (increment != shardCount) {
+                jdbcTemplate.execute(RESTART_IDENTITY.formatted(shardCount, start));
+                log.info("Restarted users2 ids on shard {} from {} every {}", shard, start, shardCount);
+            }
+            if (!hasEmailConstraint(jdbcTemplate)) {
+                try {
+                    jdbcTemplate.execute(ADD_EMAIL_CONSTRAINT);
+                    jdbcTemplate.execute(DROP_EMAIL_INDEX);
+                    log.info("Added the unique email constraint to users2 on shard {}", shard);
+                } catch (DataIntegrityViolationException e) {
+                    // emails stored twice, reported by EmailConstraintCheck once the application has started
+                    jdbcTemplate.execute(CREATE_EMAIL_INDEX);
+                }
+            }
+        }
+    }
+
+    static boolean hasEmailConstraint(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject(EMAIL_CONSTRAINT, Integer.class) > 0;
+    }
+
+    /**
+     * Smallest id above {@code base} that belongs to {@code shard}.
+     */
+    static long firstIdAbove(long base, int shard, int shardCount) {
+        return base + 1 + Math.floorMod(shard - base, shardCount);
+    }
+}
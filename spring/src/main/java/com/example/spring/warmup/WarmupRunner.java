@@ -0,0 +1,292 @@
+package com.example.spring.warmup;
+
+import com.example.spring.search.UserPrefixIndex;
+import com.example.spring.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Warms up the instance before it reports ready: opens pool connections, parses all templates
+ * and drives the authenticate/search paths and, over HTTP on the local port, the pages and the
+ * API with synthetic calls until their p99 settles. Going through the server warms the filters,
+ * controllers, view rendering with real rows and gzip of the pages and the JSON, like user traffic does.
+ * Pages that read and render the whole table cost more the more users there are, so they are
+ * called a fixed number of times instead of until their p99 settles.
+ * Spring Boot only switches readiness to ACCEPTING_TRAFFIC after all runners have finished.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "app.warmup.enabled", havingValue = "true", matchIfMissing = true)
+public class WarmupRunner implements ApplicationRunner {
+    private static final String TEMPLATES_LOCATION = "classpath:/templates/*.html";
+    private static final long P99_NOISE_FLOOR_MICROS = 50;
+    // every email contains it, so a search for it stops after the first page instead of scanning the table
+    private static final String MATCH_ANY = "@";
+    private static final Pageable FIRST_PAGE = PageRequest.of(0, 20, Sort.by("id"));
+
+    private final ApplicationContext context;
+    private final DataSource dataSource;
+    private final ITemplateEngine templateEngine;
+    private final UserService userService;
+    private final UserPrefixIndex userPrefixIndex;
+    private final PasswordEncoder passwordEncoder;
+
+    @Value("${app.warmup.connections:10}")
+    private int connections;
+
+    @Value("${app.warmup.iterations-per-round:20}")
+    private int iterationsPerRound;
+
+    @Value("${app.warmup.max-rounds:15}")
+    private int maxRounds;
+
+    @Value("${app.warmup.p99-tolerance:0.1}")
+    private double p99Tolerance;
+
+    @Value("${app.warmup.full-table-calls:3}")
+    private int fullTableCalls;
+
+    public WarmupRunner(ApplicationContext context, DataSource dataSource, ITemplateEngine templateEngine,
+                        UserService userService, UserPrefixIndex userPrefixIndex, PasswordEncoder passwordEncoder) {
+        this.context = context;
+        this.dataSource = dataSource;
+        this.templateEngine = templateEngine;
+        this.userService = userService;
+        this.userPrefixIndex = userPrefixIndex;
+        this.passwordEncoder = passwordEncoder;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        AvailabilityChangeEvent.publish(context, ReadinessState.REFUSING_TRAFFIC);
+        long start = System.nanoTime();
+
+        openConnections();
+        parseTemplates();
+        runSyntheticCalls();
+
+        log.info("Warm-up finished in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void openConnections() {
+        List<Connection> opened = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                opened.add(dataSource.getConnection());
+            }
+        } catch (SQLException e) {
+            log.warn("Warm-up opened only {} of {} connections", opened.size(), connections, e);
+        } finally {
+            for (Connection connection : opened) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    log.warn("Failed to release warm-up connection", e);
+                }
+            }
+        }
+        log.info("Warm-up opened {} pool connections", opened.size());
+    }
+
+    private void parseTemplates() {
+        Resource[] templates;
+        try {
+            templates = new PathMatchingResourcePatternResolver().getResources(TEMPLATES_LOCATION);
+        } catch (IOException e) {
+            log.warn("Failed to list templates for warm-up", e);
+            return;
+        }
+        for (Resource template : templates) {
+            String name = template.getFilename().replaceFirst("\\.html$", "");
+            try {
+                templateEngine.process(name, new Context(), Writer.nullWriter());
+            } catch (RuntimeException e) {
+                log.warn("Failed to pre-parse template {}", name, e);
+            }
+        }
+        log.info("Warm-up parsed {} templates", templates.length);
+    }
+
+    /**
+     * Calls the full-table pages {@code app.warmup.full-table-calls} times, then runs rounds of the
+     * other synthetic calls until the p99 of every path changes by less than the configured
+     * tolerance between two consecutive rounds. The calls only read: the emails and most patterns
+     * are random, so they never match real rows, and searches that do match read one page.
+     */
+    private void runSyntheticCalls() {
+        String hash = passwordEncoder.encode("warmup-password");
+        Map<String, Runnable> paths = new LinkedHashMap<>();
+        paths.put("password", () -> passwordEncoder.matches("warmup-password", hash));
+        paths.put("authenticate", () -> userService.authenticate(randomEmail(), "warmup-password"));
+        paths.put("search", () -> userService.findByPartOfUsernameOrEmail(MATCH_ANY, FIRST_PAGE));
+        paths.put("typeahead", () -> userPrefixIndex.findByPrefix(UUID.randomUUID().toString().substring(0, 2), 10));
+        Map<String, Runnable> fullTablePages = new LinkedHashMap<>();
+        addPagePaths(paths, fullTablePages);
+
+        Map<String, Long> previous = new LinkedHashMap<>();
+        try {
+            callFullTablePages(fullTablePages);
+            for (int round = 1; round <= maxRounds; round++) {
+                Map<String, Long> current = new LinkedHashMap<>();
+                paths.forEach((name, call) -> current.put(name, p99(call)));
+                log.info("Warm-up round {} p99 (us): {}", round, current);
+
+                if (isStable(previous, current)) {
+                    return;
+                }
+                previous = current;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Warm-up calls failed, reporting ready without a settled p99", e);
+            return;
+        }
+        log.warn("Warm-up p99 did not stabilize after {} rounds", maxRounds);
+    }
+
+    /**
+     * Adds the pages and API calls sent to this instance's own port, or none when no web server
+     * runs. The list and search pages read every user, they go to {@code fullTablePages}.
+     */
+    private void addPagePaths(Map<String, Runnable> paths, Map<String, Runnable> fullTablePages) {
+        if (!(context instanceof WebServerApplicationContext webContext) || webContext.getWebServer() == null) {
+            return;
+        }
+        String base = "http://localhost:" + webContext.getWebServer().getPort()
+                + context.getEnvironment().getProperty("server.servlet.context-path", "");
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .cookieHandler(new CookieManager())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        Runnable login = () -> send(client, form(base + "/login",
+                "email=" + encode(randomEmail()) + "&password=warmup-password"));
+        try {
+            // a failed login still opens the session the list pages require
+            login.run();
+        } catch (RuntimeException e) {
+            log.warn("Warm-up cannot reach {}, skipping pages", base, e);
+            return;
+        }
+        paths.put("login page", login);
+        paths.put("api", () -> send(client, request(base + "/api/users?size=20").GET().build()));
+        paths.put("api search", () -> send(client, request(base + "/api/users/search?size=20&pattern="
+                + encode(MATCH_ANY)).GET().build()));
+        fullTablePages.put("users page", () -> send(client, request(base + "/list_of_users").GET().build()));
+        fullTablePages.put("search page", () -> send(client, form(base + "/list_of_users_by_pattern",
+                "pattern=" + encode(UUID.randomUUID().toString()))));
+    }
+
+    private void callFullTablePages(Map<String, Runnable> fullTablePages) {
+        if (fullTablePages.isEmpty()) {
+            return;
+        }
+        Map<String, Long> lastCall = new LinkedHashMap<>();
+        fullTablePages.forEach((name, call) -> {
+            long elapsed = 0;
+            for (int i = 0; i < fullTableCalls; i++) {
+                long start = System.nanoTime();
+                call.run();
+                elapsed = (System.nanoTime() - start) / 1_000;
+            }
+            lastCall.put(name, elapsed);
+        });
+        log.info("Warm-up called the full-table pages {} times each, last call (us): {}", fullTableCalls, lastCall);
+    }
+
+    private static HttpRequest.Builder request(String uri) {
+        return HttpRequest.newBuilder(URI.create(uri))
+                .timeout(Duration.ofSeconds(30))
+                .header("Accept-Encoding", "gzip");
+    }
+
+    private static HttpRequest form(String uri, String body) {
+        return request(uri)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static void send(HttpClient client, HttpRequest request) {
+        HttpResponse<Void> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted during warm-up", e);
+        }
+        if (response.statusCode() >= 500) {
+            throw new IllegalStateException(request.method() + " " + request.uri() + " returned " + response.statusCode());
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private long p99(Runnable call) {
+        long[] samples = new long[iterationsPerRound];
+        for (int i = 0; i < iterationsPerRound; i++) {
+            long start = System.nanoTime();
+            call.run();
+            samples[i] = (System.nanoTime() - start) / 1_000;
+        }
+        Arrays.sort(samples);
+        return samples[(int) Math.ceil(samples.length * 0.99) - 1];
+    }
+
+    private boolean isStable(Map<String, Long> previous, Map<String, Long> current) {
+        if (previous.isEmpty()) {
+            return false;
+        }
+        for (Map.Entry<String, Long> entry : current.entrySet()) {
+            long before = previous.get(entry.getKey());
+            if (Math.abs(entry.getValue() - before) > Math.max(before * p99Tolerance, P99_NOISE_FLOOR_MICROS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String randomEmail() {
+        return "warmup-" + UUID.randomUUID() + "@warmup.invalid";
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.spring;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures the bytes the current thread allocates while an action runs. Tests that assert on the
+ * measurement are tagged {@link #TAG}; the build runs them in a JVM of their own, since contexts left
+ * behind by other test classes change what Hibernate allocates per row.
+ */
+public final class AllocationMeter {
+    public static final String TAG = "allocation";
+    private static final ThreadMXBean THREAD_MX_BEAN = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private AllocationMeter() {
+    }
+
+    public static long measure(ThrowingRunnable action) throws Exception {
+        long before = THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+        action.run();
+        return THREAD_MX_BEAN.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    /**
+     * Measures {@code action} after running it once, to keep class loading and caches out of the measurement.
+     */
+    public static long measureWarm(ThrowingRunnable action) throws Exception {
+        action.run();
+        return measure(action);
+    }
+
+    /**
+     * Asserts that each extra row costs at most {@code budgetPerRow} bytes, comparing a run over
+     * {@code smallRows} rows with one over {@code largeRows} rows so fixed per-call overhead cancels out.
+     * Both actions must do the same work apart from the number of rows.
+     */
+    public static void assertPerRowAtMost(String name, long budgetPerRow,
+                                          int smallRows, ThrowingRunnable small,
+                                          int largeRows, ThrowingRunnable large) throws Exception {
+        assertPerRowAtMost(name, budgetPerRow, smallRows, measureWarm(small), largeRows, measureWarm(large));
+    }
+
+    public static void assertPerRowAtMost(String name, long budgetPerRow,
+                                          int smallRows, long smallBytes,
+                                          int largeRows, long largeBytes) {
+        long perRow = (largeBytes - smallBytes) / (largeRows - smallRows);
+        assertTrue(perRow <= budgetPerRow, name + " allocated " + perRow + " bytes per row, budget is " + budgetPerRow);
+    }
+
+    @FunctionalInterface
+    public interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.spring;
+
+import com.example.spring.model.User;
+import com.example.spring.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:compression-test;DB_CLOSE_DELAY=-1",
+        "app.warmup.enabled=false"
+})
+class CompressionTest {
+    private static final int USERS = 100;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @BeforeEach
+    public void setUp() {
+        if (userRepository.count() < USERS) {
+            userRepository.saveAll(IntStream.range(0, USERS)
+                    .mapToObj(i -> new User("user" + i, "user" + i + "@example.com", "password" + i))
+                    .toList());
+        }
+    }
+
+    @Test
+    public void testLargePagesAreGzippedWhenTheClientAcceptsIt() throws Exception {
+        HttpClient client = loggedInClient(HttpClient.Version.HTTP_1_1);
+
+        HttpResponse<byte[]> plain = client.send(get("/list_of_users", "identity"), HttpResponse.BodyHandlers.ofByteArray());
+        HttpResponse<byte[]> gzipped = client.send(get("/list_of_users", "gzip"), HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(200, plain.statusCode());
+        assertEquals(Optional.empty(), plain.headers().firstValue("Content-Encoding"));
+        assertEquals(Optional.of("gzip"), gzipped.headers().firstValue("Content-Encoding"));
+        assertTrue(gzipped.body().length * 4 < plain.body().length,
+                gzipped.body().length + " bytes gzipped, " + plain.body().length + " bytes plain");
+        assertArrayEquals(plain.body(), gunzip(gzipped.body()));
+    }
+
+    @Test
+    public void testJsonPagesAreGzippedAndStillRevalidated() throws Exception {
+        HttpClient client = loggedInClient(HttpClient.Version.HTTP_1_1);
+
+        HttpResponse<byte[]> plain = client.send(get("/api/users?size=" + USERS, "identity"), HttpResponse.BodyHandlers.ofByteArray());
+        HttpResponse<byte[]> gzipped = client.send(get("/api/users?size=" + USERS, "gzip"), HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(200, gzipped.statusCode());
+        assertEquals(Optional.of("gzip"), gzipped.headers().firstValue("Content-Encoding"));
+        assertArrayEquals(plain.body(), gunzip(gzipped.body()));
+        String etag = gzipped.headers().firstValue("ETag").orElseThrow();
+        assertTrue(etag.startsWith("W/"), etag);
+        assertEquals(plain.headers().firstValue("ETag"), Optional.of(etag));
+
+        HttpRequest revalidate = HttpRequest.newBuilder(uri("/api/users?size=" + USERS))
+                .header("Accept-Encoding", "gzip")
+                .header("If-None-Match", etag)
+                .GET()
+                .build();
+        assertEquals(304, client.send(revalidate, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @Test
+    public void testSmallResponsesAreSentAsIs() throws Exception {
+        HttpClient client = loggedInClient(HttpClient.Version.HTTP_1_1);
+
+        HttpResponse<byte[]> response = client.send(get("/content/result.css", "gzip"), HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().length < 2048);
+        assertEquals(Optional.empty(), response.headers().firstValue("Content-Encoding"));
+    }
+
+    @Test
+    public void testPlainTextConnectionsAreUpgradedToHttp2() throws Exception {
+        HttpClient client = loggedInClient(HttpClient.Version.HTTP_2);
+
+        HttpResponse<byte[]> response = client.send(get("/list_of_users", "gzip"), HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(HttpClient.Version.HTTP_2, response.version());
+        assertEquals(200, response.statusCode());
+        assertEquals(Optional.of("gzip"), response.headers().firstValue("Content-Encoding"));
+    }
+
+    private HttpClient loggedInClient(HttpClient.Version version) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(version)
+                .cookieHandler(new CookieManager())
+                .build();
+        HttpRequest login = HttpRequest.newBuilder(uri("/login"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString("email=user1%40example.com&password=password1"))
+                .build();
+        assertEquals(200, client.send(login, HttpResponse.BodyHandlers.discarding()).statusCode());
+        return client;
+    }
+
+    private HttpRequest get(String path, String acceptEncoding) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Accept-Encoding", acceptEncoding)
+                .GET()
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static byte[] gunzip(byte[] body) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return in.readAllBytes();
+        }
+    }
+}
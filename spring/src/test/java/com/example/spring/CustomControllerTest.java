@@ -4,6 +4,7 @@ import com.example.spring.controller.CustomController;
 import com.example.spring.model.User;
 import com.example.spring.service.UserService;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,7 +13,9 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -28,6 +31,9 @@ class CustomControllerTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
     @MockBean
     private UserService userService;
 
@@ -107,7 +113,7 @@ class CustomControllerTest {
                         .param("email", "test@example.com")
                         .param("password", "password123"))
                 .andExpect(status().isOk())
-                .andExpect(view().name("form"))
+                .andExpect(view().name("menu"))
                 .andExpect(model().attribute("message", ""))
                 .andExpect(request().sessionAttribute("user", "test@example.com"));
 
@@ -183,4 +189,32 @@ class CustomControllerTest {
 
         verify(userService, times(1)).changeUsername("test@example.com", "oldpassword", "newusername");
     }
+
+    @Test
+    @Tag(AllocationMeter.TAG)
+    public void testListOfUsersPageAllocationPerRow() throws Exception {
+        MockMvc renderingMockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        List<User> fewUsers = users(100);
+        List<User> manyUsers = users(2100);
+
+        AllocationMeter.assertPerRowAtMost("users_list", 10_240,
+                100, () -> {
+                    when(userService.findAll()).thenReturn(fewUsers);
+                    renderingMockMvc.perform(get("/list_of_users").sessionAttr("user", "test@example.com"))
+                            .andExpect(status().isOk());
+                },
+                2100, () -> {
+                    when(userService.findAll()).thenReturn(manyUsers);
+                    renderingMockMvc.perform(get("/list_of_users").sessionAttr("user", "test@example.com"))
+                            .andExpect(status().isOk());
+                });
+    }
+
+    private static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new User("user" + i, "user" + i + "@example.com", "password" + i));
+        }
+        return users;
+    }
 }
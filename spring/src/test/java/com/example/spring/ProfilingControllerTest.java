@@ -0,0 +1,92 @@
+package com.example.spring;
+
+import com.example.spring.controller.ProfilingController;
+import com.example.spring.profiling.RecordingManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ProfilingControllerTest {
+    private static final String TOKEN = "secret-token";
+
+    private RecordingManager recordingManager;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    public void setUp() {
+        recordingManager = new RecordingManager(600, 10);
+        mockMvc = MockMvcBuilders.standaloneSetup(new ProfilingController(recordingManager, TOKEN)).build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        recordingManager.discard();
+    }
+
+    @Test
+    public void testEndpointsAreHiddenWithoutConfiguredToken() throws Exception {
+        MockMvc disabled = MockMvcBuilders.standaloneSetup(new ProfilingController(recordingManager, "")).build();
+        disabled.perform(post("/admin/profiling/start").header("X-Admin-Token", ""))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testWrongOrMissingTokenIsRejected() throws Exception {
+        mockMvc.perform(post("/admin/profiling/start"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/admin/profiling").header("X-Admin-Token", "guess"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void testStartStopAndDownload() throws Exception {
+        mockMvc.perform(get("/admin/profiling/recording").header("X-Admin-Token", TOKEN))
+                .andExpect(status().isConflict());
+        mockMvc.perform(post("/admin/profiling/start").param("seconds", "0").header("X-Admin-Token", TOKEN))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/admin/profiling/start").param("seconds", "3600").header("X-Admin-Token", TOKEN))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/admin/profiling/start").param("seconds", "30").header("X-Admin-Token", TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("RUNNING"));
+        mockMvc.perform(post("/admin/profiling/start").header("X-Admin-Token", TOKEN))
+                .andExpect(status().isConflict());
+        assertJfrFile(download());
+
+        mockMvc.perform(post("/admin/profiling/stop").header("X-Admin-Token", TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("CLOSED"));
+        mockMvc.perform(post("/admin/profiling/stop").header("X-Admin-Token", TOKEN))
+                .andExpect(status().isConflict());
+        assertJfrFile(download());
+    }
+
+    private byte[] download() throws Exception {
+        MvcResult started = mockMvc.perform(get("/admin/profiling/recording").header("X-Admin-Token", TOKEN))
+                .andExpect(status().isOk())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsByteArray();
+    }
+
+    private static void assertJfrFile(byte[] content) {
+        // every chunk of a recording starts with the magic bytes "FLR\0"
+        assertEquals("FLR", new String(content, 0, 3, StandardCharsets.US_ASCII));
+    }
+}
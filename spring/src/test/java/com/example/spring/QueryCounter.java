@@ -0,0 +1,60 @@
+package com.example.spring;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Counts the JDBC statements sent to the database while an action runs, so tests can pin a query budget.
+ * Imported as a bean it wraps every {@link DataSource}, so statements are counted whoever issues them:
+ * Hibernate, a {@code JdbcTemplate} or an event listener. A batch counts once. Statements are counted
+ * across all threads, so keep the measured action single-threaded.
+ */
+public class QueryCounter implements BeanPostProcessor {
+    private final AtomicLong statements = new AtomicLong();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean instanceof DataSource ? wrap(DataSource.class, bean) : bean;
+    }
+
+    public long count(Runnable action) {
+        statements.set(0);
+        action.run();
+        return statements.get();
+    }
+
+    public void assertAtMost(String name, long budget, Runnable action) {
+        long queries = count(action);
+        assertTrue(queries <= budget, name + " ran " + queries + " statements, budget is " + budget);
+    }
+
+    /**
+     * Proxies {@code target} so the connections and statements it hands out are wrapped in turn.
+     */
+    private Object wrap(Class<?> type, Object target) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (Statement.class.isAssignableFrom(type) && method.getName().startsWith("execute")) {
+                statements.incrementAndGet();
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            Class<?> returned = method.getReturnType();
+            if (result != null && (returned == Connection.class || Statement.class.isAssignableFrom(returned))) {
+                return wrap(returned, result);
+            }
+            return result;
+        });
+    }
+}
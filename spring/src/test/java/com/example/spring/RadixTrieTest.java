@@ -0,0 +1,204 @@
+package com.example.spring;
+
+import com.example.spring.search.RadixTrie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RadixTrieTest {
+    private RadixTrie trie;
+
+    @BeforeEach
+    public void setUp() {
+        trie = new RadixTrie();
+        trie.add("alice");
+        trie.add("alex");
+        trie.add("alex@example.com");
+        trie.add("bob");
+    }
+
+    @Test
+    public void testFindByPrefixReturnsKeysInOrder() {
+        assertEquals(List.of("alex", "alex@example.com", "alice"), trie.findByPrefix("al", 10));
+    }
+
+    @Test
+    public void testFindByPrefixEndingInsideEdge() {
+        assertEquals(List.of("alex@example.com"), trie.findByPrefix("alex@ex", 10));
+    }
+
+    @Test
+    public void testFindByPrefixRespectsLimit() {
+        assertEquals(List.of("alex", "alex@example.com"), trie.findByPrefix("a", 2));
+    }
+
+    @Test
+    public void testFindByPrefixWithoutMatch() {
+        assertEquals(List.of(), trie.findByPrefix("alz", 10));
+        assertEquals(List.of(), trie.findByPrefix("carol", 10));
+    }
+
+    @Test
+    public void testRemoveKeepsOtherKeys() {
+        trie.remove("alex");
+
+        assertEquals(List.of("alex@example.com", "alice"), trie.findByPrefix("al", 10));
+        assertEquals(3, trie.size());
+    }
+
+    @Test
+    public void testDuplicateKeyIsRemovedOnlyAfterLastCopy() {
+        trie.add("bob");
+        trie.remove("bob");
+
+        assertEquals(List.of("bob"), trie.findByPrefix("b", 10));
+
+        trie.remove("bob");
+
+        assertEquals(List.of(), trie.findByPrefix("b", 10));
+    }
+
+    @Test
+    public void testRemoveMissingKeyIsNoOp() {
+        trie.remove("al");
+        trie.remove("zed");
+
+        assertEquals(4, trie.size());
+    }
+
+    @Test
+    public void testBuilderPacksRepeatedAndNonLatin1Keys() {
+        RadixTrie built = new RadixTrie.Builder()
+                .add("bob").add("alice").add("bob").add("\u0431\u043e\u0440\u0438\u0441").add("alex@example.com")
+                .build();
+
+        assertEquals(5, built.size());
+        assertEquals(List.of("alex@example.com", "alice"), built.findByPrefix("al", 10));
+        assertEquals(List.of("\u0431\u043e\u0440\u0438\u0441"), built.findByPrefix("\u0431\u043e", 10));
+
+        built.remove("bob");
+        assertEquals(List.of("bob"), built.findByPrefix("b", 10));
+        built.remove("bob");
+        assertEquals(List.of(), built.findByPrefix("b", 10));
+        assertEquals(3, built.size());
+    }
+
+    @Test
+    public void testChangesMergedIntoPackedKeysMatchAPlainMap() {
+        RadixTrie merged = new RadixTrie(Runnable::run);
+        TreeMap<String, Integer> expected = new TreeMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            String key = randomKey(random);
+            if (random.nextInt(3) == 0) {
+                merged.remove(key);
+                expected.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+            } else {
+                merged.add(key);
+                expected.merge(key, 1, Integer::sum);
+            }
+            if (i % 997 == 0) {
+                assertEquals(startingWith(expected, "a", 25), merged.findByPrefix("a", 25));
+            }
+        }
+
+        assertEquals(expected.values().stream().mapToInt(Integer::intValue).sum(), merged.size());
+        for (String prefix : List.of("", "a", "ab", "b\u00e9", "ca", "\u0431", "abca", "zz")) {
+            assertEquals(startingWith(expected, prefix, 25), merged.findByPrefix(prefix, 25), prefix);
+        }
+    }
+
+    @Test
+    public void testReadsSeeChangesWhileTheyAreMerged() {
+        List<Runnable> merges = new ArrayList<>();
+        RadixTrie merging = new RadixTrie(merges::add);
+        for (int i = 0; i < 1024; i++) {
+            merging.add("user" + i);
+        }
+        assertEquals(1, merges.size());
+
+        merging.remove("user1");
+        merging.add("user1-renamed");
+        assertEquals(List.of("user1-renamed", "user10", "user100"), merging.findByPrefix("user1", 3));
+
+        merges.get(0).run();
+
+        assertEquals(List.of("user1-renamed", "user10", "user100"), merging.findByPrefix("user1", 3));
+        assertEquals(1024, merging.size());
+    }
+
+    @Test
+    @Tag(AllocationMeter.TAG)
+    public void testLoadedIndexTakesAtMost100BytesPerUser() throws InterruptedException {
+        int users = 200_000;
+        String[] domains = {"example.com", "gmail.com", "yahoo.com", "outlook.com", "company.org"};
+        Random random = new Random(1);
+        // the strings stay reachable through this list, so only what the trie holds on top is measured
+        List<String> keys = new ArrayList<>(2 * users);
+        for (int i = 0; i < users; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int length = 5 + random.nextInt(8); name.length() < length; ) {
+                name.append((char) ('a' + random.nextInt(26)));
+            }
+            keys.add(name.toString());
+            keys.add(name + "." + i + "@" + domains[random.nextInt(domains.length)]);
+        }
+        long before = usedHeap();
+
+        RadixTrie loaded = build(keys);
+
+        long perUser = (usedHeap() - before) / users;
+        // an object per node, as before the keys were packed, takes over 200
+        assertTrue(perUser <= 100, "the index takes " + perUser + " bytes per user, budget is 100");
+        assertEquals(keys.size(), loaded.size());
+    }
+
+    private static RadixTrie build(List<String> keys) {
+        RadixTrie.Builder builder = new RadixTrie.Builder();
+        keys.forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * Heap in use once collections stop freeing anything, a single one may leave garbage behind.
+     */
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(50);
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (now >= used) {
+                break;
+            }
+            used = now;
+        }
+        return used;
+    }
+
+    private static String randomKey(Random random) {
+        String alphabet = "abc\u00e9\u0431";
+        StringBuilder key = new StringBuilder();
+        int length = 1 + random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            key.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return key.toString();
+    }
+
+    private static List<String> startingWith(TreeMap<String, Integer> keys, String prefix, int limit) {
+        return keys.tailMap(prefix).keySet().stream()
+                .takeWhile(key -> key.startsWith(prefix))
+                .limit(limit)
+                .toList();
+    }
+}
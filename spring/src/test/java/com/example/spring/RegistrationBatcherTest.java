@@ -0,0 +1,135 @@
+package com.example.spring;
+
+import com.example.spring.model.User;
+import com.example.spring.repository.UserRepository;
+import com.example.spring.service.RegistrationBatcher;
+import com.example.spring.sharding.ShardingConfig;
+import jakarta.validation.ConstraintViolationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {
+        "app.registration.batching.enabled=true",
+        "app.registration.batching.max-delay-ms=50"
+})
+@Import({RegistrationBatcher.class, ShardingConfig.class, ValidationAutoConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RegistrationBatcherTest {
+
+    @TestConfiguration
+    static class FastHashingConfig {
+        // minimum BCrypt cost keeps all submissions inside one flush window on slow machines
+        @Bean
+        public PasswordEncoder passwordEncoder() {
+            return new BCryptPasswordEncoder(4);
+        }
+    }
+
+    @Autowired
+    private RegistrationBatcher registrationBatcher;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void tearDown() {
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void testConcurrentRegistrationsShareCommits() {
+        List<CompletableFuture<User>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(registrationBatcher.submit(new User("user" + i, "user" + i + "@example.com", "password" + i)));
+        }
+
+        for (int i = 0; i < 20; i++) {
+            User saved = results.get(i).join();
+            assertNotNull(saved.getId());
+            User stored = userRepository.findByEmail("user" + i + "@example.com").orElseThrow();
+            assertEquals(saved.getId(), stored.getId());
+            assertTrue(new BCryptPasswordEncoder().matches("password" + i, stored.getPassword()));
+        }
+        assertEquals(20, registrationBatcher.registrationCount());
+        assertTrue(registrationBatcher.commitCount() < 20);
+    }
+
+    @Test
+    public void testDuplicateEmailFailsOnlyItsCaller() {
+        registrationBatcher.register(new User("first", "taken@example.com", "password1"));
+
+        CompletableFuture<User> duplicate = registrationBatcher.submit(new User("second", "taken@example.com", "password2"));
+        CompletableFuture<User> other = registrationBatcher.submit(new User("third", "free@example.com", "password3"));
+
+        CompletionException exception = assertThrows(CompletionException.class, duplicate::join);
+        assertInstanceOf(DuplicateKeyException.class, exception.getCause());
+        assertNotNull(other.join().getId());
+    }
+
+    @Test
+    public void testEmailInsertedAfterTheCheckIsRejectedByTheConstraint() throws Exception {
+        CompletableFuture<User> registration;
+        try (Connection connection = dataSource.getConnection()) {
+            // another instance registering the same email, invisible to the batch's check until it commits
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "insert into users2 (user_name, email, password) values (?, ?, ?)")) {
+                insert.setString(1, "other");
+                insert.setString(2, "racing@example.com");
+                insert.setString(3, "password0");
+                assertEquals(1, insert.executeUpdate());
+            }
+            registration = registrationBatcher.submit(new User("mine", "racing@example.com", "password1"));
+            // the batch insert waits on the unique index entry of the uncommitted row
+            awaitBatchInsert();
+            connection.commit();
+        }
+
+        CompletionException exception = assertThrows(CompletionException.class, registration::join);
+        assertInstanceOf(DuplicateKeyException.class, exception.getCause());
+        assertEquals(1, userRepository.count());
+    }
+
+    @Test
+    public void testInvalidUserIsRejectedBeforeHashing() {
+        assertThrows(ConstraintViolationException.class,
+                () -> registrationBatcher.register(new User("user", "not-an-email", "password1")));
+        assertEquals(0, userRepository.count());
+    }
+
+    private void awaitBatchInsert() throws InterruptedException {
+        String running = "select count(*) from information_schema.sessions where executing_statement like 'insert into users2%'";
+        for (int attempt = 0; attempt < 500 && jdbcTemplate.queryForObject(running, Integer.class) == 0; attempt++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, jdbcTemplate.queryForObject(running, Integer.class));
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.spring;
+
+import com.example.spring.model.User;
+import com.example.spring.service.RegistrationBatcher;
+import com.example.spring.service.UserService;
+import com.example.spring.sharding.ShardRebalancer;
+import com.example.spring.sharding.ShardRouter;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+/**
+ * Grows two H2 shards, filled before the application starts, to three. Every test starts from the
+ * two-shard layout.
+ */
+@SpringBootTest(properties = {
+        "app.warmup.enabled=false",
+        "app.sharding.enabled=true",
+        "app.sharding.shards[0].url=" + ShardRebalancerTest.SHARD_URL + "0;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+        "app.sharding.shards[1].url=" + ShardRebalancerTest.SHARD_URL + "1;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+        "app.sharding.shards[2].url=" + ShardRebalancerTest.SHARD_URL + "2;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+        "app.sharding.previous-shard-count=2",
+        "app.sharding.rebalance-batch-size=7"
+})
+@AutoConfigureMockMvc
+class ShardRebalancerTest {
+    static final String SHARD_URL = "jdbc:h2:mem:rebalancer-test-";
+    private static final int USERS = 40;
+    private static final String PASSWORD = "password123";
+    private static final String ENCODED = new BCryptPasswordEncoder(4).encode(PASSWORD);
+
+    @Autowired
+    private ShardRebalancer shardRebalancer;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @BeforeAll
+    public static void fillTwoShards() {
+        for (int i = 0; i < 2; i++) {
+            shard(i).execute("create table users2 (user_id bigint generated by default as identity "
+                    + "(start with " + (i + 1) + " increment by 2) primary key, "
+                    + "user_name varchar(255), email varchar(255), password varchar(255))");
+        }
+        fill(2);
+    }
+
+    @BeforeEach
+    public void refill() {
+        fill(3);
+    }
+
+    @Test
+    public void testRebalanceMovesUsersToTheirNewShard() {
+        long expectedMoves = 0;
+        for (int i = 0; i < USERS; i++) {
+            if (ShardRouter.shardFor(email(i), 2) != ShardRouter.shardFor(email(i), 3)) {
+                expectedMoves++;
+            }
+            // not moved yet, found through the previous layout
+            assertTrue(userService.authenticate(email(i), PASSWORD), email(i));
+        }
+        assertTrue(expectedMoves > 0);
+        Set<Long> idsBefore = new HashSet<>();
+        userService.findAll().forEach(user -> idsBefore.add(user.getId()));
+
+        assertEquals(expectedMoves, shardRebalancer.rebalance());
+
+        for (int i = 0; i < USERS; i++) {
+            int expected = ShardRouter.shardFor(email(i), 3);
+            for (int shard = 0; shard < 3; shard++) {
+                Integer count = shard(shard).queryForObject("select count(*) from users2 where email = ?",
+                        Integer.class, email(i));
+                assertEquals(shard == expected ? 1 : 0, count, email(i) + " on shard " + shard);
+            }
+            assertTrue(userService.authenticate(email(i), PASSWORD), email(i));
+        }
+        List<User> all = userService.findAll();
+        assertEquals(USERS, all.size());
+        assertEquals(idsBefore, new HashSet<>(all.stream().map(User::getId).toList()));
+
+        assertEquals(0, shardRebalancer.rebalance());
+
+        long maxId = idsBefore.stream().mapToLong(Long::longValue).max().orElseThrow();
+        for (int i = 0; i < 6; i++) {
+            User created = userService.saveUser(new User("new" + i, "new" + i + "@example.com", PASSWORD));
+            assertTrue(created.getId() > maxId, "new id " + created.getId() + " reuses the range of existing ids");
+            assertEquals((ShardRouter.shardFor(created.getEmail(), 3) + 1) % 3, created.getId() % 3);
+        }
+    }
+
+    @Test
+    public void testMoveDoesNotRevertWritesMadeDuringIt() throws Exception {
+        int i = firstMovingUser();
+        String email = email(i);
+        int source = ShardRouter.shardFor(email, 2);
+        int target = ShardRouter.shardFor(email, 3);
+        boolean wroteToCopy = false;
+        try (Connection connection = DriverManager.getConnection(SHARD_URL + source)) {
+            // a write on the old shard that is still running when the rebalancer reaches the user
+            connection.setAutoCommit(false);
+            try (PreparedStatement update = connection.prepareStatement("update users2 set user_name = ? where email = ?")) {
+                update.setString(1, "written-on-old-shard");
+                update.setString(2, email);
+                assertEquals(1, update.executeUpdate());
+            }
+            CompletableFuture<Long> rebalance = CompletableFuture.supplyAsync(shardRebalancer::rebalance);
+            for (int attempt = 0; attempt < 20 && !wroteToCopy; attempt++) {
+                Thread.sleep(50);
+                // once a copy exists the application writes to it
+                wroteToCopy = shard(target).update("update users2 set user_name = ? where email = ?",
+                        "written-on-copy", email) == 1;
+            }
+            assertFalse(rebalance.isDone());
+            connection.commit();
+            rebalance.join();
+        }
+
+        assertEquals(0, shard(source).queryForObject("select count(*) from users2 where email = ?", Integer.class, email));
+        assertEquals(wroteToCopy ? "written-on-copy" : "written-on-old-shard",
+                shard(target).queryForObject("select user_name from users2 where email = ?", String.class, email));
+    }
+
+    @Test
+    public void testDeleteRacingAMoveRemovesTheUser() throws Exception {
+        int i = firstMovingUser();
+        String email = email(i);
+        int source = ShardRouter.shardFor(email, 2);
+        CompletableFuture<Long> rebalance;
+        CompletableFuture<Void> deletion;
+        try (Connection connection = DriverManager.getConnection(SHARD_URL + source)) {
+            // holds the row, so the move and the delete both find the user on the old shard and wait
+            connection.setAutoCommit(false);
+            try (PreparedStatement update = connection.prepareStatement("update users2 set user_name = ? where email = ?")) {
+                update.setString(1, "written-on-old-shard");
+                update.setString(2, email);
+                assertEquals(1, update.executeUpdate());
+            }
+            rebalance = CompletableFuture.supplyAsync(shardRebalancer::rebalance);
+            Thread.sleep(200);
+            deletion = CompletableFuture.runAsync(() -> userService.deleteByEmail(email));
+            Thread.sleep(200);
+            assertFalse(rebalance.isDone());
+            assertFalse(deletion.isDone());
+            connection.commit();
+        }
+        deletion.join();
+        rebalance.join();
+
+        for (int shard = 0; shard < 3; shard++) {
+            assertEquals(0, shard(shard).queryForObject("select count(*) from users2 where email = ?",
+                    Integer.class, email), email + " on shard " + shard);
+        }
+        assertEquals(USERS - 1, userService.findAll().size());
+    }
+
+    @Test
+    public void testRegistrationOfAUserNotMovedYetIsRejected() throws Exception {
+        String email = email(firstMovingUser());
+        int target = ShardRouter.shardFor(email, 3);
+        RegistrationBatcher batcher = new RegistrationBatcher(jdbcTemplate, transactionManager, validator,
+                new BCryptPasswordEncoder(4), eventPublisher, shardRouter, 64, 5, 16, 1);
+        try {
+            assertThrows(DuplicateKeyException.class, () -> userService.saveUser(new User("again", email, PASSWORD)));
+            assertThrows(DuplicateKeyException.class, () -> batcher.register(new User("again", email, PASSWORD)));
+        } finally {
+            batcher.shutdown();
+        }
+        assertEquals(0, shard(target).queryForObject("select count(*) from users2 where email = ?", Integer.class, email));
+
+        // the move finds no copy in its way
+        assertTrue(shardRebalancer.rebalance() > 0);
+        assertEquals(USERS, userService.findAll().size());
+    }
+
+    @Test
+    public void testMoveKeepsACopyLeftByAnInterruptedRun() {
+        int i = firstMovingUser();
+        String email = email(i);
+        int source = ShardRouter.shardFor(email, 2);
+        int target = ShardRouter.shardFor(email, 3);
+        long id = shard(source).queryForObject("select user_id from users2 where email = ?", Long.class, email);
+        // copied by a run that stopped before the delete, then renamed through the copy
+        shard(target).update("insert into users2 (user_id, user_name, email, password) values (?, ?, ?, ?)",
+                id, "renamed", email, ENCODED);
+
+        shardRebalancer.rebalance();
+
+        assertEquals(0, shard(source).queryForObject("select count(*) from users2 where email = ?", Integer.class, email));
+        assertEquals("renamed", userService.findByEmail(email).orElseThrow().getUserName());
+        assertEquals(id, userService.findByEmail(email).orElseThrow().getId());
+        assertEquals(USERS, userService.findAll().size());
+    }
+
+    @Test
+    public void testLoginAndDeleteFallBackToThePreviousShard() throws Exception {
+        int moving = firstMovingUser();
+        int staying = 0;
+        while (ShardRouter.shardFor(email(staying), 2) != ShardRouter.shardFor(email(staying), 3)) {
+            staying++;
+        }
+
+        for (int i : new int[] {moving, staying}) {
+            mockMvc.perform(post("/login").param("email", email(i)).param("password", PASSWORD))
+                    .andExpect(view().name("menu"));
+            mockMvc.perform(post("/delete").sessionAttr("user", email(i))
+                            .param("email", email(i)).param("password", PASSWORD))
+                    .andExpect(view().name("delete_result"));
+            for (int shard = 0; shard < 3; shard++) {
+                assertEquals(0, shard(shard).queryForObject("select count(*) from users2 where email = ?",
+                        Integer.class, email(i)), email(i) + " on shard " + shard);
+            }
+            mockMvc.perform(post("/login").param("email", email(i)).param("password", PASSWORD))
+                    .andExpect(view().name("logining"));
+        }
+        assertEquals(USERS - 2, userService.findAll().size());
+    }
+
+    private static int firstMovingUser() {
+        for (int i = 0; i < USERS; i++) {
+            if (ShardRouter.shardFor(email(i), 2) != ShardRouter.shardFor(email(i), 3)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("no user moves");
+    }
+
+    /**
+     * Puts every user on its shard of the two-shard layout, with the ids the old layout handed out.
+     */
+    private static void fill(int shards) {
+        for (int shard = 0; shard < shards; shard++) {
+            shard(shard).update("delete from users2");
+        }
+        for (int i = 0; i < USERS; i++) {
+            String email = email(i);
+            int shard = ShardRouter.shardFor(email, 2);
+            shard(shard).update("insert into users2 (user_id, user_name, email, password) values (?, ?, ?, ?)",
+                    2L * i + shard + 1, "user" + i, email, ENCODED);
+        }
+    }
+
+    private static String email(int i) {
+        return "user" + i + "@example.com";
+    }
+
+    private static JdbcTemplate shard(int shard) {
+        return new JdbcTemplate(new DriverManagerDataSource(SHARD_URL + shard + ";DB_CLOSE_DELAY=-1"));
+    }
+}
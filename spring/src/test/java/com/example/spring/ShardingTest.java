@@ -0,0 +1,213 @@
+package com.example.spring;
+
+import com.example.spring.model.User;
+import com.example.spring.service.UserChangedEvent;
+import com.example.spring.service.UserService;
+import com.example.spring.sharding.ShardRouter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+/**
+ * Three in-memory H2 databases stand in for the shards.
+ */
+@SpringBootTest(properties = {
+        "app.warmup.enabled=false",
+        "app.sharding.enabled=true",
+        "app.sharding.shards[0].url=" + ShardingTest.SHARD_URL + "0;DB_CLOSE_DELAY=-1",
+        "app.sharding.shards[1].url=" + ShardingTest.SHARD_URL + "1;DB_CLOSE_DELAY=-1",
+        "app.sharding.shards[2].url=" + ShardingTest.SHARD_URL + "2;DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureMockMvc
+class ShardingTest {
+    static final String SHARD_URL = "jdbc:h2:mem:sharding-test-";
+    private static final int SHARDS = 3;
+    private static final String PASSWORD = "password123";
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private CommittedEvents committedEvents;
+
+    /**
+     * Collects the events published inside a transaction, where the outbox writes its row.
+     */
+    static class CommittedEvents {
+        final List<UserChangedEvent> events = new CopyOnWriteArrayList<>();
+
+        @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+        public void onUserChanged(UserChangedEvent event) {
+            events.add(event);
+        }
+    }
+
+    @TestConfiguration
+    static class CommittedEventsConfig {
+        @Bean
+        CommittedEvents committedEvents() {
+            return new CommittedEvents();
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        committedEvents.events.clear();
+        for (int i = 0; i < SHARDS; i++) {
+            shard(i).update("delete from users2");
+        }
+    }
+
+    @Test
+    public void testUsersAreStoredOnTheShardOfTheirEmail() {
+        List<User> users = saveUsers(12);
+
+        Set<Long> ids = new HashSet<>();
+        for (User user : users) {
+            int expected = shardRouter.shardFor(user.getEmail());
+            for (int i = 0; i < SHARDS; i++) {
+                Integer count = shard(i).queryForObject("select count(*) from users2 where email = ?",
+                        Integer.class, user.getEmail());
+                assertEquals(i == expected ? 1 : 0, count, user.getEmail() + " on shard " + i);
+            }
+            assertEquals((expected + 1) % SHARDS, user.getId() % SHARDS, "id residue of shard " + expected);
+            assertTrue(ids.add(user.getId()), "duplicate id " + user.getId());
+        }
+        for (int i = 0; i < SHARDS; i++) {
+            assertTrue(shard(i).queryForObject("select count(*) from users2", Integer.class) > 0, "shard " + i + " is empty");
+        }
+    }
+
+    @Test
+    public void testSaveUserPublishesInsideItsTransaction() {
+        List<User> users = saveUsers(3);
+
+        assertEquals(users.stream().map(user -> UserChangedEvent.created(user.getId(), user.getEmail(), user.getUserName())).toList(),
+                committedEvents.events);
+    }
+
+    @Test
+    public void testDuplicateEmailIsRejectedByItsShard() {
+        List<User> users = saveUsers(3);
+
+        assertThrows(DuplicateKeyException.class,
+                () -> userService.saveUser(new User("other", "user2@example.com", PASSWORD)));
+
+        int shard = shardRouter.shardFor("user2@example.com");
+        assertEquals(1, shard(shard).queryForObject("select count(*) from users2 where email = ?",
+                Integer.class, "user2@example.com"));
+        assertEquals(users.size(), committedEvents.events.size());
+    }
+
+    @Test
+    public void testPointOperationsRouteByEmail() {
+        saveUsers(6);
+
+        assertTrue(userService.authenticate("user3@example.com", PASSWORD));
+        assertFalse(userService.authenticate("user3@example.com", "wrong-password"));
+        assertFalse(userService.authenticate("missing@example.com", PASSWORD));
+
+        assertTrue(userService.changeUsername("user3@example.com", PASSWORD, "renamed"));
+        assertEquals("renamed", userService.findByEmail("user3@example.com").orElseThrow().getUserName());
+
+        assertTrue(userService.changePassword("user4@example.com", PASSWORD, "new-password123"));
+        assertTrue(userService.authenticate("user4@example.com", "new-password123"));
+
+        userService.deleteByEmail("user5@example.com");
+        assertTrue(userService.findByEmail("user5@example.com").isEmpty());
+
+        User user1 = userService.findByEmail("user1@example.com").orElseThrow();
+        assertEquals(user1.getEmail(), userService.findById(user1.getId()).orElseThrow().getEmail());
+        userService.deleteUserById(user1.getId());
+        assertTrue(userService.findById(user1.getId()).isEmpty());
+        assertEquals(4, userService.findAll().size());
+    }
+
+    @Test
+    public void testLoginAndDeleteRouteByEmail() throws Exception {
+        List<User> users = saveUsers(9);
+        Set<Integer> shards = new HashSet<>();
+        for (User user : users) {
+            shards.add(shardRouter.shardFor(user.getEmail()));
+            mockMvc.perform(post("/login").param("email", user.getEmail()).param("password", PASSWORD))
+                    .andExpect(view().name("menu"));
+            mockMvc.perform(post("/delete").sessionAttr("user", user.getEmail())
+                            .param("email", user.getEmail()).param("password", PASSWORD))
+                    .andExpect(view().name("delete_result"));
+            assertTrue(userService.findByEmail(user.getEmail()).isEmpty(), user.getEmail());
+            mockMvc.perform(post("/login").param("email", user.getEmail()).param("password", PASSWORD))
+                    .andExpect(view().name("logining"));
+        }
+        assertEquals(SHARDS, shards.size());
+        assertTrue(userService.findAll().isEmpty());
+    }
+
+    @Test
+    public void testListsMergeShardsInIdOrder() {
+        saveUsers(10);
+
+        List<User> all = userService.findAll();
+        assertEquals(10, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getId() < all.get(i).getId());
+        }
+
+        List<User> paged = new ArrayList<>();
+        Slice<User> slice;
+        int page = 0;
+        do {
+            slice = userService.findAll(PageRequest.of(page++, 3, Sort.by("id")));
+            assertTrue(slice.getContent().size() <= 3);
+            paged.addAll(slice.getContent());
+        } while (slice.hasNext());
+        assertEquals(all.stream().map(User::getId).toList(), paged.stream().map(User::getId).toList());
+
+        assertEquals(Set.of("user1", "user10"),
+                new HashSet<>(userService.findByPartOfUsernameOrEmail("user1").stream().map(User::getUserName).toList()));
+        Slice<User> search = userService.findByPartOfUsernameOrEmail("example", PageRequest.of(1, 4, Sort.by("id")));
+        assertEquals(all.subList(4, 8).stream().map(User::getId).toList(),
+                search.getContent().stream().map(User::getId).toList());
+        assertTrue(search.hasNext());
+    }
+
+    private List<User> saveUsers(int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            users.add(userService.saveUser(new User("user" + i, "user" + i + "@example.com", PASSWORD)));
+        }
+        return users;
+    }
+
+    private static JdbcTemplate shard(int shard) {
+        return new JdbcTemplate(new DriverManagerDataSource(SHARD_URL + shard));
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.spring;
+
+import com.example.spring.controller.TypeaheadController;
+import com.example.spring.search.UserPrefixIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@ExtendWith(MockitoExtension.class)
+class TypeaheadControllerTest {
+
+    private MockMvc mockMvc;
+
+    @Mock
+    private UserPrefixIndex userPrefixIndex;
+
+    @BeforeEach
+    public void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(new TypeaheadController(userPrefixIndex)).build();
+    }
+
+    @Test
+    public void testTypeaheadWhenUserNotLoggedIn() throws Exception {
+        mockMvc.perform(get("/typeahead").param("prefix", "us"))
+                .andExpect(status().isUnauthorized());
+
+        verifyNoInteractions(userPrefixIndex);
+    }
+
+    @Test
+    public void testTypeaheadReturnsMatches() throws Exception {
+        when(userPrefixIndex.findByPrefix("us", 10)).thenReturn(List.of("user1", "user1@example.com"));
+
+        mockMvc.perform(get("/typeahead").param("prefix", "us").sessionAttr("user", "test@example.com"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0]").value("user1"))
+                .andExpect(jsonPath("$[1]").value("user1@example.com"));
+    }
+
+    @Test
+    public void testTypeaheadClampsLimit() throws Exception {
+        when(userPrefixIndex.findByPrefix(eq("us"), anyInt())).thenReturn(List.of());
+
+        mockMvc.perform(get("/typeahead").param("prefix", "us").param("limit", "1000")
+                        .sessionAttr("user", "test@example.com"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/typeahead").param("prefix", "us").param("limit", "0")
+                        .sessionAttr("user", "test@example.com"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/typeahead").param("prefix", "us").param("limit", "-5")
+                        .sessionAttr("user", "test@example.com"))
+                .andExpect(status().isOk());
+
+        verify(userPrefixIndex).findByPrefix("us", 50);
+        verify(userPrefixIndex, times(2)).findByPrefix("us", 1);
+    }
+
+    @Test
+    public void testTypeaheadWithEmptyPrefix() throws Exception {
+        mockMvc.perform(get("/typeahead").param("prefix", "").sessionAttr("user", "test@example.com"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+
+        verifyNoInteractions(userPrefixIndex);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.spring;
+
+import com.example.spring.controller.UserApiController;
+import com.example.spring.model.User;
+import com.example.spring.service.UserDirectoryVersion;
+import com.example.spring.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.Matchers.not;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserApiControllerTest {
+
+    private MockMvc mockMvc;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private UserDirectoryVersion directoryVersion;
+
+    @BeforeEach
+    public void setUp() {
+        lenient().when(directoryVersion.current()).thenReturn("1");
+        mockMvc = MockMvcBuilders.standaloneSetup(new UserApiController(userService, directoryVersion)).build();
+    }
+
+    @Test
+    public void testListWhenUserNotLoggedIn() throws Exception {
+        mockMvc.perform(get("/api/users"))
+                .andExpect(status().isUnauthorized());
+
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    public void testListReturnsPageWithEtag() throws Exception {
+        when(userService.findAll(any(Pageable.class))).thenReturn(new SliceImpl<>(
+                List.of(new User("user1", "user1@example.com", "password1")), Pageable.ofSize(1), true));
+
+        mockMvc.perform(get("/api/users").param("size", "1").sessionAttr("user", "test@example.com"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"" + directoryVersion.current() + "\""))
+                .andExpect(jsonPath("$.content[0].userName").value("user1"))
+                .andExpect(jsonPath("$.content[0].password").doesNotExist())
+                .andExpect(jsonPath("$.hasNext").value(true));
+    }
+
+    @Test
+    public void testListWithMatchingEtagIsNotModified() throws Exception {
+        mockMvc.perform(get("/api/users").sessionAttr("user", "test@example.com")
+                        .header("If-None-Match", "W/\"" + directoryVersion.current() + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    public void testStrongEtagFromBeforeTheSwitchToWeakStillMatches() throws Exception {
+        mockMvc.perform(get("/api/users").sessionAttr("user", "test@example.com")
+                        .header("If-None-Match", "\"" + directoryVersion.current() + "\""))
+                .andExpect(status().isNotModified());
+
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    public void testEtagChangesAfterUserChange() throws Exception {
+        String etag = "W/\"" + directoryVersion.current() + "\"";
+        when(directoryVersion.current()).thenReturn("2");
+        when(userService.findAll(any(Pageable.class))).thenReturn(new SliceImpl<>(List.of()));
+
+        mockMvc.perform(get("/api/users").sessionAttr("user", "test@example.com")
+                        .header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(etag)));
+    }
+
+    @Test
+    public void testFindByEmailWithFieldSelection() throws Exception {
+        when(userService.findByEmail("user1@example.com"))
+                .thenReturn(Optional.of(new User("user1", "user1@example.com", "password1")));
+
+        mockMvc.perform(get("/api/users/by-email").sessionAttr("user", "test@example.com")
+                        .param("email", "user1@example.com")
+                        .param("fields", "email"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.email").value("user1@example.com"))
+                .andExpect(jsonPath("$.userName").doesNotExist());
+    }
+
+    @Test
+    public void testFindByIdWhenMissing() throws Exception {
+        when(userService.findById(42L)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/users/42").sessionAttr("user", "test@example.com"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testSearchWithUnknownFieldIsRejected() throws Exception {
+        mockMvc.perform(get("/api/users/search").sessionAttr("user", "test@example.com")
+                        .param("pattern", "user")
+                        .param("fields", "password"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(userService);
+    }
+}
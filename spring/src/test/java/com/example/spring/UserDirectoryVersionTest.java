@@ -0,0 +1,134 @@
+package com.example.spring;
+
+import com.example.spring.model.User;
+import com.example.spring.repository.UserRepository;
+import com.example.spring.service.UserChangedEvent;
+import com.example.spring.service.UserDirectoryVersion;
+import com.example.spring.service.UserService;
+import com.example.spring.sharding.ShardRouter;
+import com.example.spring.sharding.ShardingConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@Import({UserDirectoryVersion.class, UserService.class, ShardingConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserDirectoryVersionTest {
+
+    @Autowired
+    private UserDirectoryVersion directoryVersion;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    public void testInstancesAgreeOnTheVersionOfCommittedChanges() {
+        // another instance, or this one after a restart, on the same database
+        UserDirectoryVersion otherInstance = new UserDirectoryVersion(jdbcTemplate, shardRouter, userRepository);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        String before = directoryVersion.current();
+        assertEquals(before, otherInstance.current());
+
+        transactionTemplate.executeWithoutResult(status ->
+                eventPublisher.publishEvent(UserChangedEvent.created(1L, "user1@example.com", "user1")));
+
+        String after = directoryVersion.current();
+        assertNotEquals(before, after);
+        assertEquals(after, otherInstance.current());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            eventPublisher.publishEvent(UserChangedEvent.deleted(1L, "user1@example.com", "user1"));
+            status.setRollbackOnly();
+        });
+
+        assertEquals(after, directoryVersion.current());
+    }
+
+    @Test
+    public void testVersionIsBumpedOncePerTransaction() {
+        long before = Long.parseLong(directoryVersion.current());
+
+        // a group-committed batch of registrations
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            for (long id = 1; id <= 64; id++) {
+                eventPublisher.publishEvent(UserChangedEvent.created(id, "user" + id + "@example.com", "user" + id));
+            }
+        });
+        userService.saveUser(new User("user65", "user65@example.com", "password123"));
+
+        assertEquals(String.valueOf(before + 2), directoryVersion.current());
+    }
+
+    @Test
+    public void testVersionRowIsLockedAfterTheUserRows() throws Exception {
+        User user = userRepository.save(new User("user2", "user2@example.com", "password123"));
+        long before = Long.parseLong(directoryVersion.current());
+        CompletableFuture<Void> deletion;
+        int stripes;
+        try (Connection connection = dataSource.getConnection()) {
+            // another transaction that changed the user first and is about to commit
+            connection.setAutoCommit(false);
+            try (PreparedStatement update = connection.prepareStatement("update users2 set user_name = ? where user_id = ?")) {
+                update.setString(1, "renamed");
+                update.setLong(2, user.getId());
+                assertEquals(1, update.executeUpdate());
+            }
+            // the delete is flushed at commit, so it waits for the row lock above
+            deletion = CompletableFuture.runAsync(() -> userService.deleteUser(user));
+            awaitBlockedSession();
+            // every counter row, so whichever one the deletion picks is locked here
+            try (PreparedStatement bump = connection.prepareStatement(
+                    "update user_directory_version set version = version + 1")) {
+                stripes = bump.executeUpdate();
+            }
+            connection.commit();
+        }
+        deletion.join();
+
+        assertEquals(String.valueOf(before + stripes + 1), directoryVersion.current());
+        assertTrue(userRepository.findById(user.getId()).isEmpty());
+    }
+
+    private void awaitBlockedSession() throws InterruptedException {
+        String blocked = "select count(*) from information_schema.sessions where blocker_id is not null";
+        for (int attempt = 0; attempt < 100 && jdbcTemplate.queryForObject(blocked, Integer.class) == 0; attempt++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, jdbcTemplate.queryForObject(blocked, Integer.class));
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.spring;
+
+import com.example.spring.model.UserNameAndEmail;
+import com.example.spring.repository.UserRepository;
+import com.example.spring.search.UserPrefixIndex;
+import com.example.spring.service.UserChangedEvent;
+import com.example.spring.sharding.ShardRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UserPrefixIndexTest {
+    private UserRepository userRepository;
+    private UserPrefixIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        userRepository = mock(UserRepository.class);
+        index = new UserPrefixIndex(userRepository, new ShardRouter(1, 0, mock(PlatformTransactionManager.class)));
+    }
+
+    @Test
+    public void testChangesDuringReloadAreReplayedOntoTheNewTrie() {
+        when(userRepository.streamAllNamesAndEmails()).thenAnswer(invocation -> Stream.of(
+                        row(1, "alice", "alice@example.com"),
+                        row(2, "bob", "bob@example.com"),
+                        row(3, "dave", "dave@example.com"))
+                .peek(row -> {
+                    if (row.getId() == 2) {
+                        // committed while the table is being read
+                        index.onUserChanged(UserChangedEvent.created(4L, "carol@example.com", "carol"));
+                        index.onUserChanged(UserChangedEvent.renamed(2L, "bob@example.com", "bob", "robert"));
+                        index.onUserChanged(UserChangedEvent.deleted(1L, "alice@example.com", "alice"));
+                        // committed before the read but delivered after it started, already in the snapshot
+                        index.onUserChanged(UserChangedEvent.created(3L, "dave@example.com", "dave"));
+                    }
+                }));
+
+        index.load();
+
+        assertEquals(List.of(), index.findByPrefix("alice", 10));
+        assertEquals(List.of("bob@example.com"), index.findByPrefix("bob", 10));
+        assertEquals(List.of("robert"), index.findByPrefix("rob", 10));
+        assertEquals(List.of("carol", "carol@example.com"), index.findByPrefix("carol", 10));
+        assertEquals(List.of("dave", "dave@example.com"), index.findByPrefix("dave", 10));
+
+        index.onUserChanged(UserChangedEvent.deleted(3L, "dave@example.com", "dave"));
+        assertEquals(List.of(), index.findByPrefix("dave", 10));
+    }
+
+    @Test
+    public void testLocalChangesAreAppliedAfterLoad() {
+        when(userRepository.streamAllNamesAndEmails()).thenAnswer(invocation -> Stream.of(
+                row(1, "alice", "alice@example.com"),
+                row(2, "bob", "bob@example.com")));
+        index.load();
+
+        index.onUserChanged(UserChangedEvent.created(3L, "carol@example.com", "carol"));
+        index.onUserChanged(UserChangedEvent.renamed(2L, "bob@example.com", "bob", "robert"));
+        index.onUserChanged(UserChangedEvent.deleted(1L, "alice@example.com", "alice"));
+        index.onUserChanged(UserChangedEvent.passwordChanged(3L, "carol@example.com", "carol"));
+
+        assertEquals(List.of("carol", "carol@example.com"), index.findByPrefix("carol", 10));
+        assertEquals(List.of("robert"), index.findByPrefix("rob", 10));
+        assertEquals(List.of("bob@example.com"), index.findByPrefix("bob", 10));
+        assertEquals(List.of(), index.findByPrefix("alice", 10));
+    }
+
+    @Test
+    public void testRemoteChangesAreApplied() {
+        when(userRepository.streamAllNamesAndEmails()).thenAnswer(invocation -> Stream.of(
+                row(1, "alice", "alice@example.com")));
+        index.load();
+
+        index.onRemoteChanges(List.of(
+                UserChangedEvent.created(2L, "bob@example.com", "bob"),
+                UserChangedEvent.renamed(2L, "bob@example.com", "bob", "bobby"),
+                UserChangedEvent.deleted(1L, "alice@example.com", "alice")));
+
+        assertEquals(List.of("bob@example.com", "bobby"), index.findByPrefix("bob", 10));
+        assertEquals(List.of(), index.findByPrefix("a", 10));
+    }
+
+    private static UserNameAndEmail row(long id, String userName, String email) {
+        return new UserNameAndEmail() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getUserName() {
+                return userName;
+            }
+
+            @Override
+            public String getEmail() {
+                return email;
+            }
+        };
+    }
+}
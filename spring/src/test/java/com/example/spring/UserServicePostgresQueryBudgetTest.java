@@ -0,0 +1,43 @@
+package com.example.spring;
+
+import com.example.spring.changes.UserChangeOutbox;
+import com.example.spring.service.UserDirectoryVersion;
+import com.example.spring.service.UserService;
+import com.example.spring.sharding.ShardingConfig;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * The query budgets against a real Postgres with the change outbox on, which H2 cannot run: it
+ * needs {@code insert ... returning} and {@code pg_notify}.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = "app.changes.enabled=true")
+@Import({UserService.class, UserDirectoryVersion.class, UserChangeOutbox.class, ShardingConfig.class, QueryCounter.class})
+class UserServicePostgresQueryBudgetTest extends UserServiceQueryBudgetTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    /**
+     * The version bump, plus the outbox insert and its {@code NOTIFY}.
+     */
+    @Override
+    protected int statementsPerEvent() {
+        return 3;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.spring;
+
+import com.example.spring.model.User;
+import com.example.spring.repository.UserRepository;
+import com.example.spring.service.UserDirectoryVersion;
+import com.example.spring.service.UserService;
+import com.example.spring.sharding.ShardingConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pins the number of SQL statements each {@link UserService} call issues and the memory
+ * {@code findAll} allocates per row. Runs without a test transaction so every call sees the same
+ * persistence-context boundaries as in production, and with the listeners that write on every
+ * change, so the budgets of the writes include their statements.
+ */
+@DataJpaTest
+@Import({UserService.class, UserDirectoryVersion.class, ShardingConfig.class, QueryCounter.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserServiceQueryBudgetTest {
+    private static final String PASSWORD = "password123";
+    private static final String ENCODED_PASSWORD = new BCryptPasswordEncoder().encode(PASSWORD);
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private QueryCounter queryCounter;
+
+    @BeforeEach
+    public void setUp() {
+        userRepository.save(new User("test", "test@example.com", ENCODED_PASSWORD));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        userRepository.deleteAllInBatch();
+    }
+
+    /**
+     * Statements the listeners run for the changes of one transaction: the bump of {@link UserDirectoryVersion}.
+     */
+    protected int statementsPerEvent() {
+        return 1;
+    }
+
+    @Test
+    public void testAuthenticateBudget() {
+        queryCounter.assertAtMost("authenticate", 1, () -> userService.authenticate("test@example.com", PASSWORD));
+    }
+
+    @Test
+    public void testSaveUserBudget() {
+        queryCounter.assertAtMost("saveUser", 1 + statementsPerEvent(),
+                () -> userService.saveUser(new User("other", "other@example.com", PASSWORD)));
+    }
+
+    @Test
+    public void testChangePasswordBudget() {
+        queryCounter.assertAtMost("changePassword", 2 + statementsPerEvent(),
+                () -> userService.changePassword("test@example.com", PASSWORD, "newpassword123"));
+    }
+
+    @Test
+    public void testChangeUsernameBudget() {
+        queryCounter.assertAtMost("changeUsername", 2 + statementsPerEvent(),
+                () -> userService.changeUsername("test@example.com", PASSWORD, "renamed"));
+    }
+
+    @Test
+    public void testDeleteByEmailBudget() {
+        queryCounter.assertAtMost("deleteByEmail", 2 + statementsPerEvent(), () -> userService.deleteByEmail("test@example.com"));
+    }
+
+    @Test
+    public void testFindAllBudget() {
+        seed(100);
+
+        queryCounter.assertAtMost("findAll", 1, userService::findAll);
+        queryCounter.assertAtMost("findByPartOfUsernameOrEmail", 1,
+                () -> userService.findByPartOfUsernameOrEmail("user"));
+    }
+
+    @Test
+    @Tag(AllocationMeter.TAG)
+    public void testFindAllAllocationPerRow() throws Exception {
+        long oneRow = AllocationMeter.measureWarm(userService::findAll);
+        seed(1000);
+        long manyRows = AllocationMeter.measureWarm(userService::findAll);
+
+        AllocationMeter.assertPerRowAtMost("findAll", 640, 1, oneRow, 1001, manyRows);
+    }
+
+    private void seed(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new User("user" + i, "user" + i + "@example.com", ENCODED_PASSWORD));
+        }
+        userRepository.saveAll(users);
+    }
+}
@@ -8,13 +8,18 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import com.example.spring.model.User;
 import com.example.spring.repository.UserRepository;
+import com.example.spring.service.UserChangedEvent;
 import com.example.spring.service.UserService;
+import com.example.spring.sharding.ShardRouter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -29,6 +34,12 @@ public class UserServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Spy
+    private ShardRouter shardRouter = new ShardRouter(1, 0, mock(PlatformTransactionManager.class));
+
     @InjectMocks
     private UserService userService;
 
@@ -42,6 +53,7 @@ public class UserServiceTest {
         User savedUser = userService.saveUser(user);
         assertTrue(encoder.matches("password", savedUser.getPassword()));
         verify(userRepository, times(1)).save(user);
+        verify(eventPublisher, times(1)).publishEvent(UserChangedEvent.created(null, "test@example.com", "username"));
     }
 
     @Test
@@ -58,31 +70,38 @@ public class UserServiceTest {
     @Test
     public void testDeleteUser() {
         User user = new User("username", "test@example.com", "password");
+        user.setId(1L);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
         doNothing().when(userRepository).delete(user);
 
         userService.deleteUser(user);
 
         verify(userRepository, times(1)).delete(user);
+        verify(eventPublisher, times(1)).publishEvent(UserChangedEvent.deleted(1L, "test@example.com", "username"));
     }
 
     @Test
     public void testDeleteUserById() {
         Long userId = 1L;
-        doNothing().when(userRepository).deleteById(userId);
+        User user = new User("username", "test@example.com", "password");
+        user.setId(userId);
+        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
 
         userService.deleteUserById(userId);
 
-        verify(userRepository, times(1)).deleteById(userId);
+        verify(userRepository, times(1)).delete(user);
     }
 
     @Test
     public void testDeleteByEmail() {
         String email = "test@example.com";
-        doNothing().when(userRepository).deleteByEmail(email);
+        User user = new User("username", email, "password");
+        when(userRepository.deleteByEmail(email)).thenReturn(List.of(user));
 
         userService.deleteByEmail(email);
 
         verify(userRepository, times(1)).deleteByEmail(email);
+        verify(eventPublisher, times(1)).publishEvent(UserChangedEvent.deleted(null, email, "username"));
     }
 
     @Test
@@ -140,4 +159,33 @@ public class UserServiceTest {
         assertEquals(user, foundUser.get());
         verify(userRepository, times(1)).findByEmail(email);
     }
+
+    @Test
+    public void testChangePasswordPublishesEventWithoutHash() {
+        String email = "test@example.com";
+        User user = new User("username", email, new BCryptPasswordEncoder(4).encode("old-password"));
+        when(userRepository.findByEmail(email)).thenReturn(Optional.of(user));
+
+        assertFalse(userService.changePassword(email, "wrong-password", "new-password"));
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+
+        when(userRepository.updatePassword(eq(null), eq(user.getPassword()), anyString())).thenReturn(1);
+        assertTrue(userService.changePassword(email, "old-password", "new-password"));
+        verify(eventPublisher, times(1)).publishEvent(UserChangedEvent.passwordChanged(null, email, "username"));
+    }
+
+    @Test
+    public void testChangeUsernameRetriesWhenTheRowChangedAfterItWasRead() {
+        String email = "test@example.com";
+        String hash = new BCryptPasswordEncoder(4).encode("password");
+        when(userRepository.findByEmail(email))
+                .thenReturn(Optional.of(new User("username", email, hash)))
+                .thenReturn(Optional.of(new User("concurrent", email, hash)));
+        when(userRepository.updateUserName(null, hash, "username", "renamed")).thenReturn(0);
+        when(userRepository.updateUserName(null, hash, "concurrent", "renamed")).thenReturn(1);
+
+        assertTrue(userService.changeUsername(email, "password", "renamed"));
+        verify(eventPublisher, times(1)).publishEvent(UserChangedEvent.renamed(null, email, "concurrent", "renamed"));
+        verify(userRepository, never()).save(any());
+    }
 }
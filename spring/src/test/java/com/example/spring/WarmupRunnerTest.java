@@ -0,0 +1,80 @@
+package com.example.spring;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:warmup-test;DB_CLOSE_DELAY=-1",
+        "app.warmup.enabled=true",
+        "app.warmup.connections=2",
+        "app.warmup.iterations-per-round=2",
+        "app.warmup.max-rounds=2",
+        "app.warmup.full-table-calls=1"
+})
+class WarmupRunnerTest {
+
+    /**
+     * Counts the requests that reached the server by method, path and the status they were answered with.
+     */
+    static class RecordingFilter extends OncePerRequestFilter {
+        final Map<String, Integer> requests = new ConcurrentHashMap<>();
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+                throws ServletException, IOException {
+            filterChain.doFilter(request, response);
+            requests.merge(request.getMethod() + " " + request.getRequestURI() + " " + response.getStatus(), 1, Integer::sum);
+        }
+    }
+
+    @TestConfiguration
+    static class RecordingFilterConfig {
+        @Bean
+        RecordingFilter recordingFilter() {
+            return new RecordingFilter();
+        }
+    }
+
+    @Autowired
+    private RecordingFilter recordingFilter;
+
+    @Autowired
+    private ApplicationAvailability availability;
+
+    @Test
+    public void testWarmupDrivesPagesThroughTheServerBeforeReadiness() {
+        assertEquals(ReadinessState.ACCEPTING_TRAFFIC, availability.getReadinessState());
+        assertTrue(recordingFilter.requests.keySet().containsAll(Set.of(
+                "POST /login 200",
+                "GET /list_of_users 200",
+                "POST /list_of_users_by_pattern 200",
+                "GET /api/users 200",
+                "GET /api/users/search 200")), recordingFilter.requests.toString());
+    }
+
+    @Test
+    public void testFullTablePagesAreCalledAFixedNumberOfTimes() {
+        assertEquals(1, recordingFilter.requests.get("GET /list_of_users 200"));
+        assertEquals(1, recordingFilter.requests.get("POST /list_of_users_by_pattern 200"));
+        // the bounded calls run in every round, two rounds of two here
+        assertEquals(4, recordingFilter.requests.get("GET /api/users 200"));
+    }
+}
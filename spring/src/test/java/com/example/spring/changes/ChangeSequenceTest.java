@@ -0,0 +1,96 @@
+package com.example.spring.changes;
+
+import com.example.spring.service.UserChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeSequenceTest {
+    private static final long GAP_TIMEOUT = 1_000;
+    private static final long LATE_TIMEOUT = 10_000;
+
+    private ChangeSequence sequence;
+
+    @BeforeEach
+    public void setUp() {
+        sequence = new ChangeSequence(10, "local", GAP_TIMEOUT, LATE_TIMEOUT);
+    }
+
+    @Test
+    public void testContiguousEntriesFromOtherInstancesAreDelivered() {
+        ChangeSequence.Result result = sequence.accept(List.of(entry(11, "remote"), entry(12, "local"), entry(13, "remote")), 0);
+
+        assertEquals(List.of(event(11), event(13)), result.events());
+        assertFalse(result.resyncNeeded());
+        assertEquals(13, sequence.lastSeq());
+    }
+
+    @Test
+    public void testEntriesAfterGapAreHeldBackUntilGapCloses() {
+        ChangeSequence.Result held = sequence.accept(List.of(entry(11, "remote"), entry(13, "remote")), 0);
+
+        assertEquals(List.of(event(11)), held.events());
+        assertTrue(sequence.hasPendingGap());
+        assertEquals(11, sequence.lastSeq());
+
+        ChangeSequence.Result closed = sequence.accept(List.of(entry(12, "remote"), entry(13, "remote")), 500);
+
+        assertEquals(List.of(event(12), event(13)), closed.events());
+        assertFalse(closed.resyncNeeded());
+        assertFalse(sequence.hasPendingGap());
+    }
+
+    @Test
+    public void testGapOpenPastTimeoutIsSkippedWithResync() {
+        sequence.accept(List.of(entry(12, "remote")), 0);
+
+        ChangeSequence.Result result = sequence.accept(List.of(entry(12, "remote")), GAP_TIMEOUT);
+
+        assertEquals(List.of(event(12)), result.events());
+        assertTrue(result.resyncNeeded());
+        assertEquals(12, sequence.lastSeq());
+    }
+
+    @Test
+    public void testEntryCommittedAfterItsGapWasSkippedIsDeliveredLate() {
+        sequence.accept(List.of(entry(13, "remote")), 0);
+        sequence.accept(List.of(entry(13, "remote")), GAP_TIMEOUT);
+        assertEquals(List.of(11L, 12L), sequence.skipped(GAP_TIMEOUT));
+
+        List<UserChangedEvent> late = sequence.acceptLate(List.of(entry(12, "remote")));
+
+        assertEquals(List.of(event(12)), late);
+        assertEquals(List.of(11L), sequence.skipped(GAP_TIMEOUT));
+        assertTrue(sequence.acceptLate(List.of(entry(12, "remote"))).isEmpty());
+        assertEquals(13, sequence.lastSeq());
+    }
+
+    @Test
+    public void testSkippedGapIsForgottenAfterLateTimeout() {
+        sequence.accept(List.of(entry(12, "remote")), 0);
+        sequence.accept(List.of(entry(12, "remote")), GAP_TIMEOUT);
+
+        assertEquals(List.of(11L), sequence.skipped(GAP_TIMEOUT + LATE_TIMEOUT - 1));
+        assertTrue(sequence.skipped(GAP_TIMEOUT + LATE_TIMEOUT).isEmpty());
+        assertTrue(sequence.acceptLate(List.of(entry(11, "remote"))).isEmpty());
+    }
+
+    @Test
+    public void testAlreadyDeliveredEntriesAreIgnored() {
+        ChangeSequence.Result result = sequence.accept(List.of(entry(9, "remote"), entry(10, "remote")), 0);
+
+        assertTrue(result.events().isEmpty());
+        assertEquals(10, sequence.lastSeq());
+    }
+
+    private static ChangeSequence.Entry entry(long seq, String origin) {
+        return new ChangeSequence.Entry(seq, origin, event(seq));
+    }
+
+    private static UserChangedEvent event(long id) {
+        return UserChangedEvent.created(id, "user" + id + "@example.com", "user" + id);
+    }
+}
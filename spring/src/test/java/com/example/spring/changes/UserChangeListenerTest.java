@@ -0,0 +1,164 @@
+package com.example.spring.changes;
+
+import com.example.spring.model.User;
+import com.example.spring.search.UserPrefixIndex;
+import com.example.spring.service.UserChangedEvent;
+import com.example.spring.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the change stream against a real Postgres, with another instance simulated by writing users
+ * and their outbox rows directly.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "app.warmup.enabled=false",
+        "app.changes.enabled=true",
+        "app.changes.poll-interval-ms=200",
+        "app.changes.gap-timeout-ms=300"
+})
+class UserChangeListenerTest {
+    private static final String OTHER_ORIGIN = "other-instance";
+    private static final long TIMEOUT_MS = 10_000;
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    static class RecordingSubscriber implements UserChangeSubscriber {
+        final List<UserChangedEvent> events = new CopyOnWriteArrayList<>();
+        final AtomicInteger resyncs = new AtomicInteger();
+
+        @Override
+        public void onRemoteChanges(List<UserChangedEvent> events) {
+            this.events.addAll(events);
+        }
+
+        @Override
+        public void resync() {
+            resyncs.incrementAndGet();
+        }
+    }
+
+    @TestConfiguration
+    static class RecordingSubscriberConfig {
+        @Bean
+        RecordingSubscriber recordingSubscriber() {
+            return new RecordingSubscriber();
+        }
+    }
+
+    @Autowired
+    private RecordingSubscriber subscriber;
+
+    @Autowired
+    private UserPrefixIndex prefixIndex;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    public void testChangesFromOtherInstancesAreDelivered() {
+        userService.saveUser(new User("local-user", "local-user@example.com", "password123"));
+        long id = writeFromOtherInstance("remote-user", "remote-user@example.com");
+
+        await(() -> subscriber.events.contains(UserChangedEvent.created(id, "remote-user@example.com", "remote-user")),
+                "remote change delivered");
+        assertTrue(subscriber.events.stream().noneMatch(event -> "local-user@example.com".equals(event.email())),
+                "changes of this instance are not delivered again");
+        assertEquals(List.of("remote-user", "remote-user@example.com"), prefixIndex.findByPrefix("remote-user", 10));
+        assertEquals(List.of("local-user", "local-user@example.com"), prefixIndex.findByPrefix("local-user", 10));
+    }
+
+    @Test
+    public void testGapThatDoesNotCloseTriggersResync() {
+        int resyncs = subscriber.resyncs.get();
+        // a sequence number taken by a transaction that rolled back
+        jdbcTemplate.queryForObject("select nextval('user_changes_seq_seq')", Long.class);
+        writeFromOtherInstance("after-gap", "after-gap@example.com");
+
+        await(() -> subscriber.resyncs.get() > resyncs, "resync after the gap timed out");
+        await(() -> prefixIndex.findByPrefix("after-gap", 10).size() == 2, "index rebuilt from the table");
+    }
+
+    @Test
+    public void testChangeCommittedAfterItsGapWasSkippedIsDeliveredLate() throws Exception {
+        int resyncs = subscriber.resyncs.get();
+        try (Connection slow = dataSource.getConnection()) {
+            slow.setAutoCommit(false);
+            try (PreparedStatement insert = slow.prepareStatement("insert into user_changes (origin, type, user_id, email, user_name) "
+                    + "values (?, 'CREATED', -1, 'slow@example.com', 'slow')")) {
+                insert.setString(1, OTHER_ORIGIN);
+                insert.executeUpdate();
+            }
+            writeFromOtherInstance("after-slow", "after-slow@example.com");
+            await(() -> subscriber.resyncs.get() > resyncs, "resync after the gap timed out");
+
+            slow.commit();
+        }
+
+        await(() -> subscriber.events.contains(UserChangedEvent.created(-1L, "slow@example.com", "slow")),
+                "slow change delivered after the resync");
+    }
+
+    private long writeFromOtherInstance(String userName, String email) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            Long id = jdbcTemplate.queryForObject("insert into users2 (user_name, email, password) values (?, ?, ?) "
+                    + "returning user_id", Long.class, userName, email, "not-a-hash");
+            Long seq = jdbcTemplate.queryForObject("insert into user_changes (origin, type, user_id, email, user_name) "
+                    + "values (?, 'CREATED', ?, ?, ?) returning seq", Long.class, OTHER_ORIGIN, id, email, userName);
+            jdbcTemplate.queryForList("select pg_notify(?, ?)", UserChangeOutbox.CHANNEL, Long.toString(seq));
+            return id;
+        });
+    }
+
+    private static void await(BooleanSupplier condition, String description) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for " + description);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("interrupted waiting for " + description);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.spring.loadtest;
+
+import com.example.spring.model.User;
+import com.example.spring.repository.UserRepository;
+import com.example.spring.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Body bytes and latency of the users page and of API pages of several sizes, with and without
+ * gzip. Requests are sent one at a time, so the latencies are service times without queueing.
+ * The users page renders every row of the table, the API pages {@code loadtest.row-counts} rows.
+ * <p>
+ * {@code mvn -Ploadtest test -Dtest=CompressionLoadTest -Dloadtest.users=1000 -Dloadtest.requests=500}
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=${loadtest.datasource.url:jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1}",
+        "spring.datasource.username=${loadtest.datasource.username:sa}",
+        "spring.datasource.password=${loadtest.datasource.password:}",
+        "app.warmup.enabled=false"
+})
+class CompressionLoadTest {
+    private static final String PASSWORD = "password123";
+    private static final List<String> ENCODINGS = List.of("identity", "gzip");
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${loadtest.users:1000}")
+    private int users;
+
+    @Value("${loadtest.row-counts:10,50,100,200,500}")
+    private List<Integer> rowCounts;
+
+    @Value("${loadtest.requests:500}")
+    private int requests;
+
+    @Test
+    public void measureResponseSizes() throws Exception {
+        // a namespace per run, so the emails are new on a database an earlier run has filled
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        String login = "compression-" + run + "@example.com";
+        userService.saveUser(new User("compression", login, PASSWORD));
+        userRepository.saveAll(IntStream.range(0, users)
+                .mapToObj(i -> new User("sizeuser" + i, "sizeuser" + i + "-" + run + "@example.com", PASSWORD))
+                .toList());
+        HttpClient client = loggedInClient(login);
+
+        LatencyRecorder recorder = new LatencyRecorder();
+        System.out.printf("%-32s %8s %12s %s%n", "endpoint", "rows", "body bytes", "sent as");
+        measure(client, recorder, "users page", "/list_of_users", userRepository.count());
+        for (int rows : rowCounts) {
+            measure(client, recorder, String.format("api %03d rows", rows), "/api/users?size=" + rows, rows);
+        }
+        recorder.report(System.out, Path.of("target", "loadtest"));
+        assertEquals(0, recorder.errorCount(), "requests answered with a non-200 status");
+    }
+
+    private void measure(HttpClient client, LatencyRecorder recorder, String name, String path, long rows) throws Exception {
+        for (String encoding : ENCODINGS) {
+            String endpoint = name + " " + encoding;
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                    .header("Accept-Encoding", encoding)
+                    .GET()
+                    .build();
+            // the first tenth warms the path up and is not recorded
+            HttpResponse<byte[]> response = null;
+            for (int i = -requests / 10; i < requests; i++) {
+                long start = System.nanoTime();
+                response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                long micros = (System.nanoTime() - start) / 1_000;
+                if (i < 0) {
+                    continue;
+                }
+                recorder.record(endpoint, micros);
+                if (response.statusCode() != 200) {
+                    recorder.recordError(endpoint);
+                }
+            }
+            // responses under the compression threshold are sent as-is whatever the client accepts
+            System.out.printf("%-32s %8d %12d %s%n", endpoint, rows, response.body().length,
+                    response.headers().firstValue("Content-Encoding").orElse("identity"));
+        }
+    }
+
+    private HttpClient loggedInClient(String email) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .cookieHandler(new CookieManager())
+                .build();
+        HttpRequest login = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/login"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString("email=" + email.replace("@", "%40") + "&password=" + PASSWORD))
+                .build();
+        assertEquals(200, client.send(login, HttpResponse.BodyHandlers.discarding()).statusCode());
+        return client;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.spring.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-endpoint latency histograms in microseconds, plus error counts.
+ */
+class LatencyRecorder {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    void record(String endpoint, long micros) {
+        histograms.computeIfAbsent(endpoint, key -> new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3))
+                .recordValue(Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+    }
+
+    void recordError(String endpoint) {
+        errors.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+    }
+
+    long errorCount() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * Prints a summary line per endpoint and writes each full percentile distribution, in milliseconds,
+     * to {@code <endpoint>.hgrm} under {@code directory}.
+     */
+    void report(PrintStream out, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        out.printf("%-32s %8s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint (ms)", "count", "errors", "p50", "p90", "p99", "p99.9", "max");
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            LongAdder endpointErrors = errors.get(entry.getKey());
+            out.printf("%-32s %8d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey(), histogram.getTotalCount(), endpointErrors == null ? 0 : endpointErrors.sum(),
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+
+            Path file = directory.resolve(entry.getKey().replaceAll("[^A-Za-z0-9_-]", "_") + ".hgrm");
+            try (PrintStream hgrm = new PrintStream(Files.newOutputStream(file))) {
+                histogram.outputPercentileDistribution(hgrm, 1000.0);
+            }
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.spring.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * One browser-like session: keeps the JSESSIONID cookie between requests and submits forms
+ * url-encoded, the way the templates do. Every request is timed into the shared {@link LatencyRecorder}.
+ */
+class LoadTestSession {
+    private final HttpClient client;
+    private final URI baseUri;
+    private final LatencyRecorder recorder;
+    private String sessionCookie;
+
+    LoadTestSession(HttpClient client, URI baseUri, LatencyRecorder recorder) {
+        this.client = client;
+        this.baseUri = baseUri;
+        this.recorder = recorder;
+    }
+
+    void get(String path) throws IOException, InterruptedException {
+        send("GET " + path, request(path).GET().build());
+    }
+
+    void post(String path, Map<String, String> form) throws IOException, InterruptedException {
+        String body = form.entrySet().stream()
+                .map(entry -> encode(entry.getKey()) + "=" + encode(entry.getValue()))
+                .collect(Collectors.joining("&"));
+        send("POST " + path, request(path)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build());
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(baseUri.resolve(path));
+        if (sessionCookie != null) {
+            builder.header("Cookie", sessionCookie);
+        }
+        return builder;
+    }
+
+    private void send(String endpoint, HttpRequest request) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<Void> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            recorder.recordError(endpoint);
+            throw e;
+        }
+        recorder.record(endpoint, (System.nanoTime() - start) / 1_000);
+        if (response.statusCode() != 200) {
+            recorder.recordError(endpoint);
+        }
+        response.headers().firstValue("Set-Cookie")
+                .filter(cookie -> cookie.startsWith("JSESSIONID="))
+                .ifPresent(cookie -> sessionCookie = cookie.split(";", 2)[0]);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
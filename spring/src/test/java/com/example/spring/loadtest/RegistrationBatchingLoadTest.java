@@ -0,0 +1,79 @@
+package com.example.spring.loadtest;
+
+import com.example.spring.model.User;
+import com.example.spring.service.RegistrationBatcher;
+import com.example.spring.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares registrations per second with commits per second. Run once with
+ * {@code -Dloadtest.registration-batching=false} for the one-commit-per-registration baseline.
+ * <p>
+ * {@code mvn -Ploadtest test -Dtest=RegistrationBatchingLoadTest -Dloadtest.registrants=64 -Dloadtest.duration-seconds=30}
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "spring.datasource.url=${loadtest.datasource.url:jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1}",
+        "spring.datasource.username=${loadtest.datasource.username:sa}",
+        "spring.datasource.password=${loadtest.datasource.password:}",
+        "app.warmup.enabled=false",
+        "app.registration.batching.enabled=${loadtest.registration-batching:true}"
+})
+class RegistrationBatchingLoadTest {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ObjectProvider<RegistrationBatcher> registrationBatcher;
+
+    @Value("${loadtest.registrants:64}")
+    private int registrants;
+
+    @Value("${loadtest.duration-seconds:30}")
+    private int durationSeconds;
+
+    @Test
+    public void registerConcurrently() throws Exception {
+        // a namespace per run, so the emails are new on a database an earlier run has filled
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        AtomicLong registered = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int registrant = 0; registrant < registrants; registrant++) {
+                int id = registrant;
+                executor.submit(() -> {
+                    for (int i = 0; System.nanoTime() < end; i++) {
+                        try {
+                            userService.saveUser(new User("bench", "bench" + id + "-" + i + "-" + run + "@example.com", "password123"));
+                            registered.incrementAndGet();
+                        } catch (RuntimeException e) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        RegistrationBatcher batcher = registrationBatcher.getIfAvailable();
+        long commits = batcher == null ? registered.get() : batcher.commitCount();
+        System.out.printf("batching=%s registrants=%d: %.1f registrations/s, %.1f commits/s, %.1f registrations per commit%n",
+                batcher != null, registrants, registered.get() / seconds, commits / seconds,
+                commits == 0 ? 0.0 : (double) registered.get() / commits);
+        assertEquals(0, failed.get());
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.spring.loadtest;
+
+import com.example.spring.model.User;
+import com.example.spring.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Open-model load test: journeys start as a Poisson process at {@code loadtest.arrivals-per-second},
+ * independently of how fast earlier ones finish, so a slow server shows up as queueing latency
+ * instead of a lower request rate. Runs on an in-memory H2 database unless
+ * {@code loadtest.datasource.url} points at a local Postgres. Each run seeds and registers users
+ * under emails of its own, so it can be repeated against the same database; the users of earlier
+ * runs stay, and make the pages that render the whole table slower.
+ * <p>
+ * {@code mvn -Ploadtest test -Dloadtest.users=1000 -Dloadtest.arrivals-per-second=50 -Dloadtest.duration-seconds=60}
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=${loadtest.datasource.url:jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1}",
+        "spring.datasource.username=${loadtest.datasource.username:sa}",
+        "spring.datasource.password=${loadtest.datasource.password:}",
+        "app.warmup.enabled=${loadtest.warmup:true}"
+})
+class UserJourneyLoadTest {
+    private static final String PASSWORD = "password123";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserService userService;
+
+    @Value("${loadtest.users:200}")
+    private int users;
+
+    @Value("${loadtest.arrivals-per-second:20}")
+    private double arrivalsPerSecond;
+
+    @Value("${loadtest.duration-seconds:30}")
+    private int durationSeconds;
+
+    // a namespace per run, so the emails are new on a database an earlier run has filled
+    private final String run = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong registrations = new AtomicLong();
+
+    private record Journey(String name, int weight, Step steps) {
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run(LoadTestSession session, int user) throws Exception;
+    }
+
+    @Test
+    public void runUserJourneys() throws Exception {
+        seedUsers();
+
+        List<Journey> journeys = List.of(
+                new Journey("browse", 6, (session, user) -> {
+                    login(session, user);
+                    session.get("/list_of_users");
+                    session.post("/list_of_users_by_pattern", Map.of("pattern", "loaduser" + user % 10));
+                    session.get("/logout");
+                }),
+                new Journey("rename", 2, (session, user) -> {
+                    login(session, user);
+                    session.post("/change-username", Map.of(
+                            "email", email(user), "password", PASSWORD, "newUsername", "loaduser" + user + "-renamed"));
+                    session.get("/logout");
+                }),
+                new Journey("signup", 1, (session, user) -> {
+                    String email = "signup" + registrations.incrementAndGet() + "-" + run + "@example.com";
+                    session.post("/register", Map.of("username", "signup", "email", email, "password", PASSWORD));
+                    session.post("/login", Map.of("email", email, "password", PASSWORD));
+                    session.get("/list_of_users");
+                    session.post("/list_of_users_by_pattern", Map.of("pattern", "signup"));
+                    session.post("/change-username", Map.of(
+                            "email", email, "password", PASSWORD, "newUsername", "signup-renamed"));
+                    session.get("/logout");
+                }));
+
+        LatencyRecorder recorder = new LatencyRecorder();
+        AtomicLong failedJourneys = new AtomicLong();
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        URI baseUri = URI.create("http://localhost:" + port);
+        Random random = new Random(42);
+        int totalWeight = journeys.stream().mapToInt(Journey::weight).sum();
+
+        long started = 0;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+            long nextArrival = start;
+            while (nextArrival < end) {
+                LockSupport.parkNanos(nextArrival - System.nanoTime());
+                Journey journey = pick(journeys, random.nextInt(totalWeight));
+                int user = random.nextInt(users);
+                executor.submit(() -> {
+                    try {
+                        journey.steps().run(new LoadTestSession(client, baseUri, recorder), user);
+                    } catch (Exception e) {
+                        failedJourneys.incrementAndGet();
+                    }
+                });
+                started++;
+                nextArrival += (long) (-Math.log(1 - random.nextDouble()) / arrivalsPerSecond * 1_000_000_000L);
+            }
+        }
+
+        System.out.printf("%d journeys at %.1f/s over %d s against %d seeded users%n",
+                started, arrivalsPerSecond, durationSeconds, users);
+        recorder.report(System.out, Path.of("target", "loadtest"));
+        assertTrue(started > 0);
+        assertEquals(0, failedJourneys.get(), "journeys aborted by I/O errors");
+        assertEquals(0, recorder.errorCount(), "requests answered with a non-200 status");
+    }
+
+    private void seedUsers() {
+        IntStream.range(0, users).parallel()
+                .forEach(user -> userService.saveUser(new User("loaduser" + user, email(user), PASSWORD)));
+    }
+
+    private void login(LoadTestSession session, int user) throws Exception {
+        session.post("/login", Map.of("email", email(user), "password", PASSWORD));
+    }
+
+    private String email(int user) {
+        return "loaduser" + user + "-" + run + "@example.com";
+    }
+
+    private static Journey pick(List<Journey> journeys, int roll) {
+        for (Journey journey : journeys) {
+            roll -= journey.weight();
+            if (roll < 0) {
+                return journey;
+            }
+        }
+        throw new IllegalStateException("weights do not cover roll " + roll);
+    }
+}
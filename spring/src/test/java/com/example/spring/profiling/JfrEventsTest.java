@@ -0,0 +1,145 @@
+package com.example.spring.profiling;
+
+import com.example.spring.controller.CustomController;
+import com.example.spring.filter.BackButtonProtectionFilter;
+import com.example.spring.filter.HeadersLoggingFilter;
+import com.example.spring.filter.RequestCorrelationFilter;
+import com.example.spring.model.User;
+import com.example.spring.repository.UserRepository;
+import com.example.spring.service.UserService;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(CustomController.class)
+@Import(JfrEventsPostProcessor.class)
+class JfrEventsTest {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @MockBean
+    private UserService userService;
+
+    private MockMvc mockMvc;
+    private Recording recording;
+
+    @BeforeEach
+    public void startRecording() {
+        // only the application filters, without the security chain of the test slice
+        mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext)
+                .addFilters(webApplicationContext.getBean(RequestCorrelationFilter.class),
+                        webApplicationContext.getBean(HeadersLoggingFilter.class),
+                        webApplicationContext.getBean(BackButtonProtectionFilter.class))
+                .build();
+        recording = new Recording();
+        recording.enable(PasswordEvent.class);
+        recording.enable(RepositoryCallEvent.class);
+        recording.enable(TemplateRenderEvent.class);
+        recording.enable(FilterEvent.class);
+        recording.start();
+    }
+
+    @AfterEach
+    public void closeRecording() {
+        recording.close();
+    }
+
+    @Test
+    public void testRequestStagesShareTheCorrelationId() throws Exception {
+        mockMvc.perform(get("/").header("X-Request-Id", "request-1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Request-Id", "request-1"));
+
+        List<RecordedEvent> events = stopAndRead();
+        List<String> filters = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.example.spring.Filter"))
+                .peek(event -> assertEquals("request-1", event.getString("correlationId")))
+                .map(event -> event.getString("filter"))
+                .toList();
+        assertTrue(filters.containsAll(List.of("HeadersLoggingFilter", "BackButtonProtectionFilter")), filters.toString());
+
+        RecordedEvent render = single(events, "com.example.spring.TemplateRender");
+        assertEquals("request-1", render.getString("correlationId"));
+        assertEquals("logining", render.getString("template"));
+        assertTrue(render.getLong("bytes") > 100);
+    }
+
+    @Test
+    public void testPasswordAndRepositoryEvents() throws Exception {
+        PasswordEncoder encoder = new ProfiledPasswordEncoder(new BCryptPasswordEncoder(4));
+        UserRepository target = mock(UserRepository.class);
+        when(target.findByEmail("user@example.com"))
+                .thenReturn(Optional.of(new User("user", "user@example.com", "password")));
+        when(target.findAll()).thenReturn(List.of(new User(), new User(), new User()));
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.addAdvice(JfrEventsPostProcessor.repositoryCallInterceptor("UserRepository"));
+        UserRepository repository = (UserRepository) proxyFactory.getProxy();
+
+        RequestCorrelation.with("request-2", () -> {
+            assertTrue(encoder.matches("password", encoder.encode("password")));
+            repository.findByEmail("user@example.com");
+            repository.findAll();
+            return null;
+        });
+
+        List<RecordedEvent> events = stopAndRead();
+        List<RecordedEvent> passwords = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.example.spring.Password"))
+                .toList();
+        assertEquals(List.of("hash", "match"), passwords.stream().map(event -> event.getString("operation")).toList());
+        assertTrue(passwords.get(1).getBoolean("matched"));
+
+        List<RecordedEvent> calls = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.example.spring.RepositoryCall"))
+                .peek(event -> assertEquals("request-2", event.getString("correlationId")))
+                .peek(event -> assertEquals("UserRepository", event.getString("repository")))
+                .toList();
+        assertEquals(List.of("findByEmail", "findAll"), calls.stream().map(event -> event.getString("query")).toList());
+        assertEquals(List.of(1L, 3L), calls.stream().map(event -> event.getLong("rows")).toList());
+    }
+
+    private List<RecordedEvent> stopAndRead() throws IOException {
+        recording.stop();
+        Path file = Files.createTempFile("jfr-events-test-", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .toList();
+        assertEquals(1, matching.size(), name);
+        return matching.get(0);
+    }
+}